@@ -0,0 +1,9 @@
+// Global class for AST
+class AST {
+    AST left;
+    AST right;
+    String value;
+    // Sethi-Ullman number of an expression, and whether evaluating it calls a function
+    int registerNeed = 0;
+    boolean calls = false;
+}
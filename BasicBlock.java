@@ -0,0 +1,34 @@
+// Import libraries
+import java.util.*;
+
+// Global class for a basic block of IR instructions
+class BasicBlock {
+    int id;
+    String label;
+    ArrayList<IRInstruction> instructions = new ArrayList<>();
+    ArrayList<BasicBlock> successors = new ArrayList<>();
+    ArrayList<BasicBlock> predecessors = new ArrayList<>();
+    BasicBlock fallThrough;
+
+    // Constructor
+    public BasicBlock(int id) {
+        this.id = id;
+    }
+
+    // Basic block getters
+    public int getId() { return this.id; }
+    public String getLabel() { return this.label; }
+
+    // Last instruction if it transfers control, otherwise null
+    public IRInstruction terminator() {
+        if(instructions.isEmpty()) {
+            return null;
+        }
+        IRInstruction last = instructions.get(instructions.size() - 1);
+        return last.isTerminator() ? last : null;
+    }
+
+    @Override public String toString() {
+        return "block " + id + (label != null ? " (" + label + ")" : "");
+    }
+}
@@ -0,0 +1,255 @@
+// Import libraries
+import java.io.PrintStream;
+import java.util.*;
+
+/*  Global class for cleaning up the branches of the IR code.
+ *  Jumps and branches to blocks that only pass control on are threaded to
+ *  the final target. A branch around a lone jump is inverted to branch to
+ *  the jump's target instead. The test at the top of a loop is copied to
+ *  the jump at the bottom with its condition inverted, so every iteration
+ *  ends with one taken branch instead of a jump followed by a branch that
+ *  is not taken. The copy computes the test into fresh temporaries, so the
+ *  ones of the top test do not stay live through the whole loop. Blocks
+ *  that can no longer be reached are removed, and so are jumps and
+ *  branches to the label that directly follows them.
+ */
+class BranchOptimizer {
+    // Largest loop test, branch included, that is copied to the bottom of the loop
+    static final int MAX_LOOP_TEST = 3;
+
+    ControlFlowGraph graph;
+    int tempNumber = 0;
+
+    // Statistics for the report
+    int jumpsThreaded = 0;
+    int branchesInverted = 0;
+    int loopsInverted = 0;
+    int blocksRemoved = 0;
+    int jumpsRemoved = 0;
+
+    // Constructor
+    public BranchOptimizer(List<IRInstruction> code) {
+        ArrayList<IRInstruction> copy = new ArrayList<>();
+        for(IRInstruction instruction: code) {
+            copy.add(instruction.copy());
+            for(String operand: instruction.operands) {
+                if(IRInstruction.isTemp(operand)) {
+                    tempNumber = Math.max(tempNumber, Integer.parseInt(operand.substring(2)));
+                }
+            }
+        }
+        graph = ControlFlowGraph.build(copy);
+    }
+
+    // Running branch optimization on a list of IR instructions, the counts go to the report stream
+    public static ArrayList<IRInstruction> optimize(List<IRInstruction> code, PrintStream report) {
+        return optimize(code, 0, report);
+    }
+
+    // Same, with new temporaries numbered after the given one as well as after those in the code
+    public static ArrayList<IRInstruction> optimize(List<IRInstruction> code, int tempNumber, PrintStream report) {
+        BranchOptimizer optimizer = new BranchOptimizer(code);
+        optimizer.tempNumber = Math.max(optimizer.tempNumber, tempNumber);
+        ArrayList<IRInstruction> optimized = optimizer.run();
+        report.println("Branch optimization: " + optimizer.jumpsThreaded + " jumps threaded, " +
+                optimizer.branchesInverted + " branches inverted, " + optimizer.loopsInverted + " loop tests moved to the bottom, " +
+                optimizer.blocksRemoved + " unreachable blocks removed, " + optimizer.jumpsRemoved + " jumps to the next label removed");
+        return optimized;
+    }
+
+    // Method to run the passes in order
+    public ArrayList<IRInstruction> run() {
+        threadJumps();
+        invertBranchesAroundJumps();
+        invertLoops();
+        ArrayList<IRInstruction> code = removeUnreachableBlocks();
+        removeJumpsToNext(code);
+        return code;
+    }
+
+    // Instructions of a block apart from its labels
+    static ArrayList<IRInstruction> body(BasicBlock block) {
+        ArrayList<IRInstruction> body = new ArrayList<>();
+        for(IRInstruction instruction: block.instructions) {
+            if(!instruction.isLabel()) {
+                body.add(instruction);
+            }
+        }
+        return body;
+    }
+
+    // Checking whether a block does nothing but pass control to another block
+    static boolean isForwarding(BasicBlock block) {
+        ArrayList<IRInstruction> body = body(block);
+        if(body.isEmpty()) {
+            return block.fallThrough != null;
+        }
+        return body.size() == 1 && body.get(0).isJump();
+    }
+
+    // Block where control really goes when it reaches the given block
+    BasicBlock forward(BasicBlock block) {
+        HashSet<BasicBlock> seen = new HashSet<>();
+        while(block != null && isForwarding(block) && seen.add(block)) {
+            IRInstruction last = block.terminator();
+            BasicBlock next = last != null ? graph.labels.get(last.target()) : block.fallThrough;
+            if(next == null) {
+                break;
+            }
+            block = next;
+        }
+        return block;
+    }
+
+    // Method to point jumps and branches past blocks that only pass control on
+    void threadJumps() {
+        for(BasicBlock block: graph.blocks) {
+            IRInstruction last = block.terminator();
+            if(last == null || (!last.isJump() && !last.isBranch())) {
+                continue;
+            }
+            BasicBlock target = graph.labels.get(last.target());
+            BasicBlock finalTarget = forward(target);
+            if(target == null || finalTarget == target) {
+                continue;
+            }
+            last.operands[last.operands.length - 1] = graph.labelOf(finalTarget);
+            jumpsThreaded++;
+        }
+        graph.connect();
+    }
+
+    /*  Turning "branch to X; JUMP Y; X:" into "inverted branch to Y; X:".
+     *  The jump is left behind in an unreachable block that is removed later.
+     */
+    void invertBranchesAroundJumps() {
+        for(int i = 0; i + 2 < graph.blocks.size(); i++) {
+            BasicBlock block = graph.blocks.get(i);
+            BasicBlock jumpBlock = graph.blocks.get(i + 1);
+            IRInstruction last = block.terminator();
+            if(last == null || !last.isBranch() || jumpBlock.label != null || jumpBlock.instructions.size() != 1
+                    || !jumpBlock.instructions.get(0).isJump()
+                    || graph.labels.get(last.target()) != graph.blocks.get(i + 2)) {
+                continue;
+            }
+            String[] operands = last.operands.clone();
+            operands[operands.length - 1] = jumpBlock.instructions.get(0).target();
+            block.instructions.set(block.instructions.size() - 1, new IRInstruction(IRInstruction.invertBranch(last.opcode), operands));
+            jumpBlock.instructions.clear();
+            branchesInverted++;
+        }
+        graph.connect();
+    }
+
+    /*  Replacing the jump back to a loop's top with a copy of the loop test.
+     *  This is done when the top block is only the test, the test branches
+     *  out of the loop to the block right after the jump, and the copied
+     *  branch is inverted to go back into the loop body instead.
+     */
+    void invertLoops() {
+        for(int i = 0; i + 1 < graph.blocks.size(); i++) {
+            BasicBlock block = graph.blocks.get(i);
+            IRInstruction last = block.terminator();
+            if(last == null || !last.isJump()) {
+                continue;
+            }
+            BasicBlock top = graph.labels.get(last.target());
+            ArrayList<IRInstruction> body = top != null ? body(top) : new ArrayList<>();
+            if(top == null || top.id > block.id || body.size() > MAX_LOOP_TEST || top.fallThrough == null) {
+                continue;
+            }
+            IRInstruction test = top.terminator();
+            if(test == null || !test.isBranch() || graph.labels.get(test.target()) != graph.blocks.get(i + 1)) {
+                continue;
+            }
+            block.instructions.remove(block.instructions.size() - 1);
+            HashMap<String, String> renamed = freshTestTemps(top, body);
+            for(IRInstruction instruction: body.subList(0, body.size() - 1)) {
+                IRInstruction copy = instruction.copy();
+                rename(copy, renamed);
+                block.instructions.add(copy);
+            }
+            String[] operands = test.operands.clone();
+            for(int j = 0; j < operands.length - 1; j++) {
+                operands[j] = renamed.getOrDefault(operands[j], operands[j]);
+            }
+            operands[operands.length - 1] = graph.labelOf(top.fallThrough);
+            block.instructions.add(new IRInstruction(IRInstruction.invertBranch(test.opcode), operands));
+            loopsInverted++;
+        }
+        graph.connect();
+    }
+
+    /*  New names for the temporaries the loop test computes. A temporary
+     *  that is also read outside the top block keeps its name, because the
+     *  bottom copy has to update it for those readers as well.
+     */
+    HashMap<String, String> freshTestTemps(BasicBlock top, ArrayList<IRInstruction> body) {
+        HashSet<String> readElsewhere = new HashSet<>();
+        for(BasicBlock other: graph.blocks) {
+            if(other != top) {
+                for(IRInstruction instruction: other.instructions) {
+                    readElsewhere.addAll(instruction.uses());
+                }
+            }
+        }
+        HashMap<String, String> renamed = new HashMap<>();
+        for(IRInstruction instruction: body) {
+            String dest = instruction.dest();
+            if(dest != null && IRInstruction.isTemp(dest) && !readElsewhere.contains(dest) && !renamed.containsKey(dest)) {
+                tempNumber++;
+                renamed.put(dest, "$T" + tempNumber);
+            }
+        }
+        return renamed;
+    }
+
+    // Method to replace renamed temporaries in the operands of an instruction, labels are never temporaries
+    static void rename(IRInstruction instruction, HashMap<String, String> renamed) {
+        for(int i = 0; i < instruction.operands.length; i++) {
+            instruction.operands[i] = renamed.getOrDefault(instruction.operands[i], instruction.operands[i]);
+        }
+    }
+
+    // Method to collect the code of the blocks reachable from the entry
+    ArrayList<IRInstruction> removeUnreachableBlocks() {
+        HashSet<BasicBlock> reached = new HashSet<>();
+        ArrayDeque<BasicBlock> worklist = new ArrayDeque<>();
+        reached.add(graph.entry());
+        worklist.add(graph.entry());
+        while(!worklist.isEmpty()) {
+            for(BasicBlock successor: worklist.poll().successors) {
+                if(reached.add(successor)) {
+                    worklist.add(successor);
+                }
+            }
+        }
+        ArrayList<IRInstruction> code = new ArrayList<>();
+        for(BasicBlock block: graph.blocks) {
+            if(reached.contains(block)) {
+                code.addAll(block.instructions);
+            }
+            else if(!block.instructions.isEmpty()) {
+                blocksRemoved++;
+            }
+        }
+        return code;
+    }
+
+    // Method to drop jumps and branches to a label that comes right after them
+    void removeJumpsToNext(ArrayList<IRInstruction> code) {
+        for(int i = code.size() - 1; i >= 0; i--) {
+            IRInstruction instruction = code.get(i);
+            if(!instruction.isJump() && !instruction.isBranch()) {
+                continue;
+            }
+            for(int j = i + 1; j < code.size() && code.get(j).isLabel(); j++) {
+                if(code.get(j).target().equals(instruction.target())) {
+                    code.remove(i);
+                    jumpsRemoved++;
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,788 @@
+// Import libraries
+import java.io.*;
+import java.util.*;
+
+/*  Global class for running a Little program directly from its AST.
+ *  The statement trees built by ASTBuilder are compiled once into a tree of
+ *  node objects. Every node has an execute method specialized for its
+ *  operation and its types, and all names are resolved at compile time:
+ *  INT variables live in slots of an int[] frame and FLOAT variables in
+ *  slots of a double[] frame. Globals share one frame, and every call gets
+ *  a frame of its own for the parameters and locals of the function.
+ *  Running the program is then only a walk over the nodes, which the JIT
+ *  can inline into tight loops.
+ *  Output matches the Tiny code: integers in decimal, floats with six
+ *  decimals and strings as declared, without any separators.
+ */
+class ClosureCompiler {
+    Driver.ASTBuilder ast;
+    Hashtable<String, String> stringValue;
+    HashMap<String, Integer> globalInts = new HashMap<>();
+    HashMap<String, Integer> globalFloats = new HashMap<>();
+    HashMap<String, Integer> intSlots = new HashMap<>();
+    HashMap<String, Integer> floatSlots = new HashMap<>();
+    HashMap<String, Function> functions = new HashMap<>();
+    List<AST> trees;
+    HashSet<String> loopTops = new HashSet<>();
+    int position = 0;
+
+    // Variables of a running function, the global frame also holds the input and output
+    static final class Frame {
+        final int[] ints;
+        final double[] floats;
+        final Frame globals;
+        final BufferedReader input;
+        final PrintStream output;
+        StringTokenizer tokens = new StringTokenizer("");
+        int intResult;
+        double floatResult;
+        boolean returned = false;
+
+        // Global frame constructor
+        Frame(int intCount, int floatCount, InputStream input, PrintStream output) {
+            this.ints = new int[intCount];
+            this.floats = new double[floatCount];
+            this.globals = this;
+            this.input = new BufferedReader(new InputStreamReader(input));
+            this.output = output;
+        }
+
+        // Call frame constructor
+        Frame(int intCount, int floatCount, Frame globals) {
+            this.ints = new int[intCount];
+            this.floats = new double[floatCount];
+            this.globals = globals;
+            this.input = null;
+            this.output = null;
+        }
+
+        // Next whitespace separated token of the input
+        String nextToken() {
+            try {
+                while(!tokens.hasMoreTokens()) {
+                    String line = input.readLine();
+                    if(line == null) {
+                        throw new IllegalStateException("READ past the end of the input");
+                    }
+                    tokens = new StringTokenizer(line);
+                }
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return tokens.nextToken();
+        }
+    }
+
+    // Node types, each subclass implements one operation
+    abstract static class Statement {
+        abstract void execute(Frame frame);
+    }
+
+    abstract static class IntExpression {
+        abstract int execute(Frame frame);
+    }
+
+    abstract static class FloatExpression {
+        abstract double execute(Frame frame);
+    }
+
+    abstract static class Condition {
+        abstract boolean execute(Frame frame);
+    }
+
+    // Argument of a call, evaluated in the caller's frame and stored in the callee's
+    abstract static class Argument {
+        abstract void bind(Frame caller, Frame callee);
+    }
+
+    // Compiled function, its body and frame sizes are filled in when its definition is compiled
+    static final class Function {
+        final String name;
+        Statement body;
+        int intCount;
+        int floatCount;
+
+        Function(String name) {
+            this.name = name;
+        }
+    }
+
+    // Compiled program with the global frame sizes it needs
+    static final class Program {
+        final Function main;
+        final int intCount;
+        final int floatCount;
+
+        Program(Function main, int intCount, int floatCount) {
+            this.main = main;
+            this.intCount = intCount;
+            this.floatCount = floatCount;
+        }
+
+        // Running the program once on the given input
+        public void run(InputStream input, PrintStream output) {
+            Frame globals = new Frame(intCount, floatCount, input, output);
+            new Call(main, new Argument[0]).execute(globals);
+            output.flush();
+        }
+    }
+
+    // Constructor
+    public ClosureCompiler(Driver.ASTBuilder ast) {
+        this.ast = ast;
+        this.stringValue = ast.stringValue;
+        this.trees = ast.getASTs();
+        for(String variable: ast.variableType.keySet()) {
+            if(ast.variableType.get(variable).equals("INT")) {
+                globalInts.put(variable, globalInts.size());
+            }
+            else if(ast.variableType.get(variable).equals("FLOAT")) {
+                globalFloats.put(variable, globalFloats.size());
+            }
+        }
+        for(FunctionSymbol function: ast.definedFunctions) {
+            functions.put(function.getName(), new Function(function.getName()));
+        }
+        // Only the top of a loop is jumped back to
+        HashSet<String> labels = new HashSet<>();
+        for(AST tree: trees) {
+            String[] parts = tree.value.split(" ");
+            if(parts[0].equals("LABEL")) {
+                labels.add(parts[1]);
+            }
+            else if(parts[0].equals("JUMP") && labels.contains(parts[1])) {
+                loopTops.add(parts[1]);
+            }
+        }
+    }
+
+    // Compiling the functions collected by an ASTBuilder, the program starts at main
+    public static Program compile(Driver.ASTBuilder ast) {
+        ClosureCompiler compiler = new ClosureCompiler(ast);
+        while(compiler.position < compiler.trees.size()) {
+            AST tree = compiler.trees.get(compiler.position);
+            if(tree.value.startsWith("FUNCTION ")) {
+                compiler.function();
+            }
+            else if(tree.value.startsWith("STRING ")) {
+                compiler.position++;
+            }
+            else {
+                throw new IllegalStateException("Unexpected " + tree.value);
+            }
+        }
+        Function main = compiler.functions.get("main");
+        if(main == null) {
+            throw new IllegalStateException("No main function to run");
+        }
+        return new Program(main, compiler.globalInts.size(), compiler.globalFloats.size());
+    }
+
+    // Method to compile "FUNCTION name, body, ENDFUNCTION name", parameters take the first slots
+    void function() {
+        Function function = functions.get(trees.get(position++).value.split(" ")[1]);
+        FunctionSymbol symbol = ast.functions.get(function.name);
+        intSlots.clear();
+        floatSlots.clear();
+        for(int i = 0; i < symbol.parameterTypes.size(); i++) {
+            slot("$P" + (i + 1), symbol.parameterTypes.get(i));
+        }
+        function.body = block();
+        expect("ENDFUNCTION");
+        function.intCount = intSlots.size();
+        function.floatCount = floatSlots.size();
+    }
+
+    // Slot of a variable, the $P and $L operands belong to the function being compiled
+    int slot(String operand, String type) {
+        boolean local = operand.startsWith("$");
+        HashMap<String, Integer> slots = type.equals("INT") ? (local ? intSlots : globalInts) : (local ? floatSlots : globalFloats);
+        Integer slot = slots.get(operand);
+        if(slot == null) {
+            slot = slots.size();
+            slots.put(operand, slot);
+        }
+        return slot;
+    }
+
+    /*  Rebuilding the statement structure from the flat statement list.
+     *  ASTBuilder lowers WHILE to "LABEL top, COND, body, JUMP top, LABEL end"
+     *  and IF to "COND, then, [JUMP end, LABEL else, else], LABEL end", so a
+     *  block ends at a JUMP, at a LABEL that is not the top of a loop or at
+     *  the end of the function.
+     */
+    Statement block() {
+        ArrayList<Statement> statements = new ArrayList<>();
+        while(position < trees.size()) {
+            AST tree = trees.get(position);
+            String kind = tree.value.split(" ")[0];
+            if(kind.equals("LABEL") && loopTops.contains(tree.value.split(" ")[1])) {
+                statements.add(whileStatement());
+            }
+            else if(kind.equals("LABEL") || kind.equals("JUMP") || kind.equals("ENDFUNCTION")) {
+                break;
+            }
+            else if(kind.equals("COND")) {
+                statements.add(ifStatement());
+            }
+            else {
+                position++;
+                Statement statement = statement(tree);
+                if(statement != null) {
+                    statements.add(statement);
+                }
+            }
+        }
+        if(statements.size() == 1) {
+            return statements.get(0);
+        }
+        return new Block(statements.toArray(new Statement[0]));
+    }
+
+    // Method to compile "LABEL top, COND, body, JUMP top, LABEL end"
+    Statement whileStatement() {
+        position++;
+        Condition condition = condition(trees.get(position++));
+        Statement body = block();
+        expect("JUMP");
+        expect("LABEL");
+        return new While(condition, body);
+    }
+
+    // Method to compile "COND, then, [JUMP end, LABEL else, else], LABEL end"
+    Statement ifStatement() {
+        Condition condition = condition(trees.get(position++));
+        Statement thenPart = block();
+        Statement elsePart = null;
+        if(trees.get(position).value.startsWith("JUMP ")) {
+            position++;
+            expect("LABEL");
+            elsePart = block();
+        }
+        expect("LABEL");
+        return new If(condition, thenPart, elsePart);
+    }
+
+    // Method to step over a marker node of the expected kind
+    void expect(String kind) {
+        if(position >= trees.size() || !trees.get(position).value.startsWith(kind + " ")) {
+            throw new IllegalStateException("Expected " + kind + " in the statement list");
+        }
+        position++;
+    }
+
+    // Method to compile one simple statement, declarations give null
+    Statement statement(AST tree) {
+        String[] parts = tree.value.split(" ");
+        switch(parts[0]) {
+            case ":=":
+                String[] target = tree.left.value.split(" ");
+                int slot = slot(target[1], target[2]);
+                boolean global = !target[1].startsWith("$");
+                if(target[2].equals("INT")) {
+                    IntExpression value = intExpression(tree.right);
+                    return global ? new AssignGlobalInt(slot, value) : new AssignInt(slot, value);
+                }
+                FloatExpression value = floatExpression(tree.right);
+                return global ? new AssignGlobalFloat(slot, value) : new AssignFloat(slot, value);
+
+            case "READ":
+            case "WRITE":
+                ArrayList<Statement> statements = new ArrayList<>();
+                for(String variable: parts[1].split(",")) {
+                    String[] operand = variable.split(":");
+                    statements.add(parts[0].equals("READ") ? read(operand[0], operand[1]) : write(operand[0], operand[1]));
+                }
+                return statements.size() == 1 ? statements.get(0) : new Block(statements.toArray(new Statement[0]));
+
+            case "RETURN":
+                if(parts[1].equals("FLOAT")) {
+                    return new ReturnFloat(floatExpression(tree.left));
+                }
+                return new ReturnInt(intExpression(tree.left));
+        }
+        return null;
+    }
+
+    // Method to compile reading one variable
+    Statement read(String operand, String type) {
+        if(type.equals("INT")) {
+            return new ReadInt(slot(operand, type), !operand.startsWith("$"));
+        }
+        return new ReadFloat(slot(operand, type), !operand.startsWith("$"));
+    }
+
+    // Method to compile writing one variable
+    Statement write(String operand, String type) {
+        if(type.equals("INT")) {
+            return new WriteInt(slot(operand, type), !operand.startsWith("$"));
+        }
+        if(type.equals("FLOAT")) {
+            return new WriteFloat(slot(operand, type), !operand.startsWith("$"));
+        }
+        String value = stringValue.get(operand);
+        return new WriteString(value.substring(1, value.length() - 1));
+    }
+
+    // Method to compile a call node "CALL name returnType argumentCount" and its ARG chain
+    Call call(AST tree) {
+        String name = tree.value.split(" ")[1];
+        Function function = functions.get(name);
+        if(function == null) {
+            throw new IllegalStateException("Function " + name + " is only available as Tiny code");
+        }
+        ArrayList<String> parameterTypes = ast.functions.get(name).parameterTypes;
+        Argument[] arguments = new Argument[parameterTypes.size()];
+        AST argument = tree.left;
+        for(int i = 0; i < arguments.length; i++, argument = argument.right) {
+            // Parameters take the first slots of their type in the callee's frame
+            String type = parameterTypes.get(i);
+            int slot = Collections.frequency(parameterTypes.subList(0, i), type);
+            if(type.equals("INT")) {
+                arguments[i] = new IntArgument(slot, intExpression(argument.left));
+            }
+            else {
+                arguments[i] = new FloatArgument(slot, floatExpression(argument.left));
+            }
+        }
+        return new Call(function, arguments);
+    }
+
+    // Type of an expression tree, following the rule ASTBuilder uses for the IR
+    String type(AST tree) {
+        String[] parts = tree.value.split(" ");
+        switch(parts[0]) {
+            case "VARREF":
+            case "CALL":
+                return parts[2];
+            case "CONSTANT":
+                return "CONSTANT";
+        }
+        String left = type(tree.left);
+        String right = type(tree.right);
+        if(!left.equals("CONSTANT")) {
+            return left;
+        }
+        if(!right.equals("CONSTANT")) {
+            return right;
+        }
+        return literalType(tree.left);
+    }
+
+    // Type of the leftmost literal of a constant expression
+    static String literalType(AST tree) {
+        while(tree.left != null) {
+            tree = tree.left;
+        }
+        return tree.value.contains(".") ? "FLOAT" : "INT";
+    }
+
+    // Method to compile an expression that is used as an integer
+    IntExpression intExpression(AST tree) {
+        String[] parts = tree.value.split(" ");
+        if(parts[0].equals("CONSTANT")) {
+            return new IntConstant((int) Double.parseDouble(parts[1]));
+        }
+        if(type(tree).equals("FLOAT")) {
+            return new FloatToInt(floatExpression(tree));
+        }
+        if(parts[0].equals("VARREF")) {
+            int slot = slot(parts[1], "INT");
+            return parts[1].startsWith("$") ? new IntVariable(slot) : new GlobalInt(slot);
+        }
+        if(parts[0].equals("CALL")) {
+            return new IntCall(call(tree));
+        }
+        IntExpression left = intExpression(tree.left);
+        IntExpression right = intExpression(tree.right);
+        switch(parts[1]) {
+            case "+": return new IntAdd(left, right);
+            case "-": return new IntSubtract(left, right);
+            case "*": return new IntMultiply(left, right);
+            default: return new IntDivide(left, right);
+        }
+    }
+
+    // Method to compile an expression that is used as a float
+    FloatExpression floatExpression(AST tree) {
+        String[] parts = tree.value.split(" ");
+        if(parts[0].equals("CONSTANT")) {
+            return new FloatConstant(Double.parseDouble(parts[1]));
+        }
+        if(type(tree).equals("INT")) {
+            return new IntToFloat(intExpression(tree));
+        }
+        if(parts[0].equals("VARREF")) {
+            int slot = slot(parts[1], "FLOAT");
+            return parts[1].startsWith("$") ? new FloatVariable(slot) : new GlobalFloat(slot);
+        }
+        if(parts[0].equals("CALL")) {
+            return new FloatCall(call(tree));
+        }
+        FloatExpression left = floatExpression(tree.left);
+        FloatExpression right = floatExpression(tree.right);
+        switch(parts[1]) {
+            case "+": return new FloatAdd(left, right);
+            case "-": return new FloatSubtract(left, right);
+            case "*": return new FloatMultiply(left, right);
+            default: return new FloatDivide(left, right);
+        }
+    }
+
+    // Method to compile a condition node "COND op label"
+    Condition condition(AST tree) {
+        String compop = tree.value.split(" ")[1];
+        String type = type(tree);
+        if(type.equals("FLOAT")) {
+            FloatExpression left = floatExpression(tree.left);
+            FloatExpression right = floatExpression(tree.right);
+            switch(compop) {
+                case "<": return new FloatLess(left, right);
+                case ">": return new FloatGreater(left, right);
+                case "<=": return new FloatLessEqual(left, right);
+                case ">=": return new FloatGreaterEqual(left, right);
+                case "=": return new FloatEqual(left, right);
+                default: return new Not(new FloatEqual(left, right));
+            }
+        }
+        IntExpression left = intExpression(tree.left);
+        IntExpression right = intExpression(tree.right);
+        switch(compop) {
+            case "<": return new IntLess(left, right);
+            case ">": return new IntGreater(left, right);
+            case "<=": return new IntLessEqual(left, right);
+            case ">=": return new IntGreaterEqual(left, right);
+            case "=": return new IntEqual(left, right);
+            default: return new Not(new IntEqual(left, right));
+        }
+    }
+
+    // Statements
+    // A RETURN sets the frame's returned flag, which ends the enclosing blocks and loops
+    static final class Block extends Statement {
+        final Statement[] statements;
+        Block(Statement[] statements) { this.statements = statements; }
+        @Override void execute(Frame frame) {
+            for(Statement statement: statements) {
+                statement.execute(frame);
+                if(frame.returned) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static final class While extends Statement {
+        final Condition condition;
+        final Statement body;
+        While(Condition condition, Statement body) { this.condition = condition; this.body = body; }
+        @Override void execute(Frame frame) {
+            while(!frame.returned && condition.execute(frame)) {
+                body.execute(frame);
+            }
+        }
+    }
+
+    static final class If extends Statement {
+        final Condition condition;
+        final Statement thenPart;
+        final Statement elsePart;
+        If(Condition condition, Statement thenPart, Statement elsePart) {
+            this.condition = condition;
+            this.thenPart = thenPart;
+            this.elsePart = elsePart;
+        }
+        @Override void execute(Frame frame) {
+            if(condition.execute(frame)) {
+                thenPart.execute(frame);
+            }
+            else if(elsePart != null) {
+                elsePart.execute(frame);
+            }
+        }
+    }
+
+    static final class AssignInt extends Statement {
+        final int slot;
+        final IntExpression value;
+        AssignInt(int slot, IntExpression value) { this.slot = slot; this.value = value; }
+        @Override void execute(Frame frame) { frame.ints[slot] = value.execute(frame); }
+    }
+
+    static final class AssignFloat extends Statement {
+        final int slot;
+        final FloatExpression value;
+        AssignFloat(int slot, FloatExpression value) { this.slot = slot; this.value = value; }
+        @Override void execute(Frame frame) { frame.floats[slot] = value.execute(frame); }
+    }
+
+    static final class AssignGlobalInt extends Statement {
+        final int slot;
+        final IntExpression value;
+        AssignGlobalInt(int slot, IntExpression value) { this.slot = slot; this.value = value; }
+        @Override void execute(Frame frame) { frame.globals.ints[slot] = value.execute(frame); }
+    }
+
+    static final class AssignGlobalFloat extends Statement {
+        final int slot;
+        final FloatExpression value;
+        AssignGlobalFloat(int slot, FloatExpression value) { this.slot = slot; this.value = value; }
+        @Override void execute(Frame frame) { frame.globals.floats[slot] = value.execute(frame); }
+    }
+
+    static final class ReturnInt extends Statement {
+        final IntExpression value;
+        ReturnInt(IntExpression value) { this.value = value; }
+        @Override void execute(Frame frame) { frame.intResult = value.execute(frame); frame.returned = true; }
+    }
+
+    static final class ReturnFloat extends Statement {
+        final FloatExpression value;
+        ReturnFloat(FloatExpression value) { this.value = value; }
+        @Override void execute(Frame frame) { frame.floatResult = value.execute(frame); frame.returned = true; }
+    }
+
+    // Input and output go through the global frame, the flag says which frame holds the variable
+    static final class ReadInt extends Statement {
+        final int slot;
+        final boolean global;
+        ReadInt(int slot, boolean global) { this.slot = slot; this.global = global; }
+        @Override void execute(Frame frame) { (global ? frame.globals : frame).ints[slot] = Integer.parseInt(frame.globals.nextToken()); }
+    }
+
+    static final class ReadFloat extends Statement {
+        final int slot;
+        final boolean global;
+        ReadFloat(int slot, boolean global) { this.slot = slot; this.global = global; }
+        @Override void execute(Frame frame) { (global ? frame.globals : frame).floats[slot] = Double.parseDouble(frame.globals.nextToken()); }
+    }
+
+    static final class WriteInt extends Statement {
+        final int slot;
+        final boolean global;
+        WriteInt(int slot, boolean global) { this.slot = slot; this.global = global; }
+        @Override void execute(Frame frame) { frame.globals.output.print((global ? frame.globals : frame).ints[slot]); }
+    }
+
+    static final class WriteFloat extends Statement {
+        final int slot;
+        final boolean global;
+        WriteFloat(int slot, boolean global) { this.slot = slot; this.global = global; }
+        @Override void execute(Frame frame) {
+            frame.globals.output.print(String.format("%.6f", (global ? frame.globals : frame).floats[slot]));
+        }
+    }
+
+    static final class WriteString extends Statement {
+        final String value;
+        WriteString(String value) { this.value = value; }
+        @Override void execute(Frame frame) { frame.globals.output.print(value); }
+    }
+
+    // Calls
+    static final class Call {
+        final Function function;
+        final Argument[] arguments;
+        Call(Function function, Argument[] arguments) { this.function = function; this.arguments = arguments; }
+        Frame execute(Frame frame) {
+            Frame callee = new Frame(function.intCount, function.floatCount, frame.globals);
+            for(Argument argument: arguments) {
+                argument.bind(frame, callee);
+            }
+            function.body.execute(callee);
+            return callee;
+        }
+    }
+
+    static final class IntArgument extends Argument {
+        final int slot;
+        final IntExpression value;
+        IntArgument(int slot, IntExpression value) { this.slot = slot; this.value = value; }
+        @Override void bind(Frame caller, Frame callee) { callee.ints[slot] = value.execute(caller); }
+    }
+
+    static final class FloatArgument extends Argument {
+        final int slot;
+        final FloatExpression value;
+        FloatArgument(int slot, FloatExpression value) { this.slot = slot; this.value = value; }
+        @Override void bind(Frame caller, Frame callee) { callee.floats[slot] = value.execute(caller); }
+    }
+
+    // Integer expressions
+    static final class IntConstant extends IntExpression {
+        final int value;
+        IntConstant(int value) { this.value = value; }
+        @Override int execute(Frame frame) { return value; }
+    }
+
+    static final class IntVariable extends IntExpression {
+        final int slot;
+        IntVariable(int slot) { this.slot = slot; }
+        @Override int execute(Frame frame) { return frame.ints[slot]; }
+    }
+
+    static final class GlobalInt extends IntExpression {
+        final int slot;
+        GlobalInt(int slot) { this.slot = slot; }
+        @Override int execute(Frame frame) { return frame.globals.ints[slot]; }
+    }
+
+    static final class IntCall extends IntExpression {
+        final Call call;
+        IntCall(Call call) { this.call = call; }
+        @Override int execute(Frame frame) { return call.execute(frame).intResult; }
+    }
+
+    static final class FloatToInt extends IntExpression {
+        final FloatExpression value;
+        FloatToInt(FloatExpression value) { this.value = value; }
+        @Override int execute(Frame frame) { return (int) value.execute(frame); }
+    }
+
+    static final class IntAdd extends IntExpression {
+        final IntExpression left, right;
+        IntAdd(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override int execute(Frame frame) { return left.execute(frame) + right.execute(frame); }
+    }
+
+    static final class IntSubtract extends IntExpression {
+        final IntExpression left, right;
+        IntSubtract(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override int execute(Frame frame) { return left.execute(frame) - right.execute(frame); }
+    }
+
+    static final class IntMultiply extends IntExpression {
+        final IntExpression left, right;
+        IntMultiply(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override int execute(Frame frame) { return left.execute(frame) * right.execute(frame); }
+    }
+
+    static final class IntDivide extends IntExpression {
+        final IntExpression left, right;
+        IntDivide(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override int execute(Frame frame) { return left.execute(frame) / right.execute(frame); }
+    }
+
+    // Float expressions
+    static final class FloatConstant extends FloatExpression {
+        final double value;
+        FloatConstant(double value) { this.value = value; }
+        @Override double execute(Frame frame) { return value; }
+    }
+
+    static final class FloatVariable extends FloatExpression {
+        final int slot;
+        FloatVariable(int slot) { this.slot = slot; }
+        @Override double execute(Frame frame) { return frame.floats[slot]; }
+    }
+
+    static final class GlobalFloat extends FloatExpression {
+        final int slot;
+        GlobalFloat(int slot) { this.slot = slot; }
+        @Override double execute(Frame frame) { return frame.globals.floats[slot]; }
+    }
+
+    static final class FloatCall extends FloatExpression {
+        final Call call;
+        FloatCall(Call call) { this.call = call; }
+        @Override double execute(Frame frame) { return call.execute(frame).floatResult; }
+    }
+
+    static final class IntToFloat extends FloatExpression {
+        final IntExpression value;
+        IntToFloat(IntExpression value) { this.value = value; }
+        @Override double execute(Frame frame) { return value.execute(frame); }
+    }
+
+    static final class FloatAdd extends FloatExpression {
+        final FloatExpression left, right;
+        FloatAdd(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override double execute(Frame frame) { return left.execute(frame) + right.execute(frame); }
+    }
+
+    static final class FloatSubtract extends FloatExpression {
+        final FloatExpression left, right;
+        FloatSubtract(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override double execute(Frame frame) { return left.execute(frame) - right.execute(frame); }
+    }
+
+    static final class FloatMultiply extends FloatExpression {
+        final FloatExpression left, right;
+        FloatMultiply(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override double execute(Frame frame) { return left.execute(frame) * right.execute(frame); }
+    }
+
+    static final class FloatDivide extends FloatExpression {
+        final FloatExpression left, right;
+        FloatDivide(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override double execute(Frame frame) { return left.execute(frame) / right.execute(frame); }
+    }
+
+    // Conditions, the left operand is evaluated first like in the Tiny code
+    static final class IntLess extends Condition {
+        final IntExpression left, right;
+        IntLess(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) < right.execute(frame); }
+    }
+
+    static final class IntLessEqual extends Condition {
+        final IntExpression left, right;
+        IntLessEqual(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) <= right.execute(frame); }
+    }
+
+    static final class IntGreater extends Condition {
+        final IntExpression left, right;
+        IntGreater(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) > right.execute(frame); }
+    }
+
+    static final class IntGreaterEqual extends Condition {
+        final IntExpression left, right;
+        IntGreaterEqual(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) >= right.execute(frame); }
+    }
+
+    static final class IntEqual extends Condition {
+        final IntExpression left, right;
+        IntEqual(IntExpression left, IntExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) == right.execute(frame); }
+    }
+
+    static final class FloatLess extends Condition {
+        final FloatExpression left, right;
+        FloatLess(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) < right.execute(frame); }
+    }
+
+    static final class FloatLessEqual extends Condition {
+        final FloatExpression left, right;
+        FloatLessEqual(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) <= right.execute(frame); }
+    }
+
+    static final class FloatGreater extends Condition {
+        final FloatExpression left, right;
+        FloatGreater(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) > right.execute(frame); }
+    }
+
+    static final class FloatGreaterEqual extends Condition {
+        final FloatExpression left, right;
+        FloatGreaterEqual(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) >= right.execute(frame); }
+    }
+
+    static final class FloatEqual extends Condition {
+        final FloatExpression left, right;
+        FloatEqual(FloatExpression left, FloatExpression right) { this.left = left; this.right = right; }
+        @Override boolean execute(Frame frame) { return left.execute(frame) == right.execute(frame); }
+    }
+
+    static final class Not extends Condition {
+        final Condition condition;
+        Not(Condition condition) { this.condition = condition; }
+        @Override boolean execute(Frame frame) { return !condition.execute(frame); }
+    }
+}
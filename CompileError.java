@@ -0,0 +1,8 @@
+// Global class for an error in the program that stops the compile, the message is the line the compiler prints for it
+class CompileError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CompileError(String message) {
+        super(message);
+    }
+}
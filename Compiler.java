@@ -0,0 +1,169 @@
+// Import libraries
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*  Compiler for programs that embed it, such as a build service.
+ *  A compile takes the source as a string and returns a Result with the
+ *  symbol table, the IR, the Tiny code, the listing the command line
+ *  compiler would print, and the diagnostics: syntax errors, optimization
+ *  reports and the error that stopped the compile. A program with syntax
+ *  errors stops with the error "SYNTAX ERROR" after parsing, and an
+ *  exception inside the compiler stops it with "INTERNAL ERROR" and the
+ *  exception. Nothing is printed and nothing exits the JVM.
+ *  A Compiler keeps its lexer, parser and builders and resets them before
+ *  every compile, so reusing one is cheap, but only one thread can use it
+ *  at a time. compilePooled takes a Compiler from a pool and can be called
+ *  from any number of threads. All parsers share the prediction DFA of the
+ *  grammar, which ANTLR updates under a lock, and linked object files and
+ *  profiles are only read, so they can be shared between compiles as well.
+ */
+public class Compiler {
+    static final int POOL_SIZE = 16;
+    static final ArrayBlockingQueue<Compiler> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // Back end options of a compile, the libraries are linked into the program
+    public static class Options {
+        public boolean optimize = false;
+        public boolean instrument = false;
+        public int registerCount = 0;
+        public ProfileData profile = null;
+        public List<ObjectFile> libraries = new ArrayList<>();
+    }
+
+    // Everything a compile produced, up to the error if there was one
+    public static class Result {
+        LinkedHashMap<String, ArrayList<SymbolTableElement>> symbolTable = new LinkedHashMap<>();
+        ArrayList<String> ir = new ArrayList<>();
+        ArrayList<String> tiny = new ArrayList<>();
+        ArrayList<String> diagnostics = new ArrayList<>();
+        String error = null;
+        String listing = "";
+
+        // Result getters
+        public LinkedHashMap<String, ArrayList<SymbolTableElement>> getSymbolTable() { return this.symbolTable; }
+        public ArrayList<String> getIR() { return this.ir; }
+        public ArrayList<String> getTiny() { return this.tiny; }
+        public ArrayList<String> getDiagnostics() { return this.diagnostics; }
+        public String getError() { return this.error; }
+        public String getListing() { return this.listing; }
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    LittleLexer lexer;
+    CommonTokenStream tokens;
+    LittleParser parser;
+    Driver.SymbolTableBuilder symbolTableBuilder = new Driver.SymbolTableBuilder();
+    Driver.ASTBuilder ast = new Driver.ASTBuilder();
+
+    // Listing and report streams the builders print to, and the syntax errors of the current compile
+    ByteArrayOutputStream listing = new ByteArrayOutputStream();
+    ByteArrayOutputStream reports = new ByteArrayOutputStream();
+    ArrayList<String> syntaxErrors = new ArrayList<>();
+
+    // Constructor
+    public Compiler() {
+        BaseErrorListener syntaxErrorListener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+                syntaxErrors.add("line " + line + ":" + charPositionInLine + " " + msg);
+            }
+        };
+        lexer = new LittleLexer(CharStreams.fromString(""));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrorListener);
+        tokens = new CommonTokenStream(lexer);
+        parser = new LittleParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(syntaxErrorListener);
+
+        symbolTableBuilder.out = new PrintStream(listing, true, StandardCharsets.UTF_8);
+        ast.out = symbolTableBuilder.out;
+        ast.err = new PrintStream(reports, true, StandardCharsets.UTF_8);
+    }
+
+    // Compiling with a compiler from the pool, safe to call from many threads at once
+    public static Result compilePooled(String source, Options options) {
+        Compiler compiler = pool.poll();
+        if(compiler == null) {
+            compiler = new Compiler();
+        }
+        try {
+            return compiler.compile(source, options);
+        }
+        finally {
+            pool.offer(compiler);
+        }
+    }
+
+    // Method to clear the state of the last compile
+    public void reset() {
+        symbolTableBuilder.reset();
+        ast.reset();
+        listing.reset();
+        reports.reset();
+        syntaxErrors.clear();
+    }
+
+    // Compiling one program, the same steps as the command line compiler
+    public Result compile(String source, Options options) {
+        reset();
+        Result result = new Result();
+        lexer.setInputStream(CharStreams.fromString(source));
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        ParseTree parseTree = parser.program();
+
+        try {
+            // The builders need a well formed parse tree
+            if(!syntaxErrors.isEmpty()) {
+                throw new CompileError("SYNTAX ERROR");
+            }
+            ParseTreeWalker.DEFAULT.walk(symbolTableBuilder, parseTree);
+            symbolTableBuilder.formattedPrint();
+            result.symbolTable.putAll(symbolTableBuilder.scopedTable);
+
+            for(ObjectFile library: options.libraries) {
+                ast.link(library);
+            }
+            ParseTreeWalker.DEFAULT.walk(ast, parseTree);
+            ast.optimize = options.optimize;
+            ast.IRCodeGenerator();
+            for(IRInstruction instruction: ast.irInstructions()) {
+                result.ir.add(instruction.toString());
+            }
+
+            ast.instrument = options.instrument;
+            ast.registerCount = options.registerCount;
+            ast.profile = options.profile;
+            ast.tinyCodeFormatting();
+            result.tiny.addAll(ast.tinyCode);
+        }
+        catch(CompileError e) {
+            result.error = e.getMessage();
+            ast.out.println(e.getMessage());
+        }
+        // Anything else is a bug in the compiler, it still ends with a result so a pooled caller keeps running
+        catch(RuntimeException e) {
+            result.error = "INTERNAL ERROR " + e;
+        }
+
+        result.listing = listing.toString(StandardCharsets.UTF_8);
+        result.diagnostics.addAll(syntaxErrors);
+        for(String line: reports.toString(StandardCharsets.UTF_8).split("\n")) {
+            if(!line.isEmpty()) {
+                result.diagnostics.add(line);
+            }
+        }
+        if(result.error != null) {
+            result.diagnostics.add(result.error);
+        }
+        return result;
+    }
+}
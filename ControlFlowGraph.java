@@ -0,0 +1,296 @@
+// Import libraries
+import java.util.*;
+
+/*  Global class for the control flow graph of the IR code.
+ *  Blocks are numbered in source order, which keeps the numbering stable
+ *  between compiles of the same program (profiles refer to these numbers).
+ *  The layout list is the order the blocks are emitted in, and linearize()
+ *  patches the jumps so the code stays correct for any layout.
+ */
+class ControlFlowGraph {
+    ArrayList<BasicBlock> blocks = new ArrayList<>();
+    ArrayList<BasicBlock> layout = new ArrayList<>();
+    HashMap<String, BasicBlock> labels = new HashMap<>();
+
+    // Dominator information, filled in by computeDominators
+    ArrayList<BasicBlock> order;
+    int[] orderIndex;
+    BasicBlock[] idom;
+    ArrayList<ArrayList<BasicBlock>> dominatorChildren;
+
+    // Splitting a list of IR instructions into basic blocks
+    public static ControlFlowGraph build(List<IRInstruction> code) {
+        ControlFlowGraph graph = new ControlFlowGraph();
+        BasicBlock current = null;
+        for(IRInstruction instruction: code) {
+            if(current == null || instruction.isLabel()) {
+                // An empty block can simply take over the label
+                if(current == null || !current.instructions.isEmpty()) {
+                    current = graph.newBlock();
+                }
+            }
+            if(instruction.isLabel()) {
+                current.label = instruction.target();
+                graph.labels.put(current.label, current);
+            }
+            current.instructions.add(instruction);
+            if(instruction.isTerminator()) {
+                current = null;
+            }
+        }
+        if(graph.blocks.isEmpty()) {
+            graph.newBlock();
+        }
+        graph.connect();
+        graph.layout.addAll(graph.blocks);
+        return graph;
+    }
+
+    // Method to add a new empty block
+    BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(blocks.size());
+        blocks.add(block);
+        return block;
+    }
+
+    // Method to compute successor and predecessor lists from the terminators
+    void connect() {
+        for(BasicBlock block: blocks) {
+            block.successors.clear();
+            block.predecessors.clear();
+        }
+        for(int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            IRInstruction last = block.terminator();
+            block.fallThrough = null;
+            if(last != null && (last.isJump() || last.isBranch())) {
+                addEdge(block, labels.get(last.target()));
+            }
+            if((last == null || last.isBranch()) && i + 1 < blocks.size()) {
+                block.fallThrough = blocks.get(i + 1);
+                addEdge(block, block.fallThrough);
+            }
+        }
+    }
+
+    // Method to add an edge once
+    void addEdge(BasicBlock from, BasicBlock to) {
+        if(to != null && !from.successors.contains(to)) {
+            from.successors.add(to);
+            to.predecessors.add(from);
+        }
+    }
+
+    // Entry block getter
+    public BasicBlock entry() {
+        return blocks.get(0);
+    }
+
+    // Method to number the reachable blocks in reverse postorder
+    public void computeOrder() {
+        int count = blocks.size();
+        order = new ArrayList<>();
+        orderIndex = new int[count];
+        Arrays.fill(orderIndex, -1);
+        boolean[] seen = new boolean[count];
+        ArrayList<BasicBlock> postorder = new ArrayList<>();
+        Stack<BasicBlock> stack = new Stack<>();
+        Stack<Integer> nextSuccessor = new Stack<>();
+        stack.push(entry());
+        nextSuccessor.push(0);
+        seen[entry().id] = true;
+        while(!stack.isEmpty()) {
+            BasicBlock block = stack.peek();
+            int index = nextSuccessor.pop();
+            if(index < block.successors.size()) {
+                nextSuccessor.push(index + 1);
+                BasicBlock successor = block.successors.get(index);
+                if(!seen[successor.id]) {
+                    seen[successor.id] = true;
+                    stack.push(successor);
+                    nextSuccessor.push(0);
+                }
+                continue;
+            }
+            stack.pop();
+            postorder.add(block);
+        }
+        for(int i = postorder.size() - 1; i >= 0; i--) {
+            orderIndex[postorder.get(i).id] = order.size();
+            order.add(postorder.get(i));
+        }
+    }
+
+    /*  Method to compute immediate dominators (Cooper, Harvey and Kennedy).
+     *  The iteration converges in a few passes on reducible flow graphs such
+     *  as the ones the structured Little statements produce.
+     */
+    public void computeDominators() {
+        int count = blocks.size();
+        computeOrder();
+        idom = new BasicBlock[count];
+        BasicBlock entry = entry();
+        idom[entry.id] = entry;
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(int i = 1; i < order.size(); i++) {
+                BasicBlock block = order.get(i);
+                BasicBlock newIdom = null;
+                for(BasicBlock predecessor: block.predecessors) {
+                    if(idom[predecessor.id] == null) {
+                        continue;
+                    }
+                    newIdom = newIdom == null ? predecessor : intersect(predecessor, newIdom);
+                }
+                if(idom[block.id] != newIdom) {
+                    idom[block.id] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        dominatorChildren = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            dominatorChildren.add(new ArrayList<>());
+        }
+        for(BasicBlock block: order) {
+            if(block != entry) {
+                dominatorChildren.get(idom[block.id].id).add(block);
+            }
+        }
+    }
+
+    // Walking up the dominator tree to the closest common dominator
+    BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while(first != second) {
+            while(orderIndex[first.id] > orderIndex[second.id]) {
+                first = idom[first.id];
+            }
+            while(orderIndex[second.id] > orderIndex[first.id]) {
+                second = idom[second.id];
+            }
+        }
+        return first;
+    }
+
+    // Checking whether the first block dominates the second
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        if(orderIndex[block.id] < 0) {
+            return false;
+        }
+        while(block != dominator && block != entry()) {
+            block = idom[block.id];
+        }
+        return block == dominator;
+    }
+
+    // Giving a block a label so it can be jumped to
+    public String labelOf(BasicBlock block) {
+        if(block.label == null) {
+            // Code from an earlier graph can already use the name, and the underscore keeps it apart from function names
+            String label = "block_" + block.id;
+            for(int i = 1; labels.containsKey(label); i++) {
+                label = "block_" + block.id + "_" + i;
+            }
+            block.label = label;
+            labels.put(block.label, block);
+            block.instructions.add(0, new IRInstruction("LABEL", block.label));
+        }
+        return block.label;
+    }
+
+    /*  Ordering the blocks by execution count.
+     *  Starting at the entry, the hottest unplaced successor becomes the
+     *  fall-through of each block. When a chain ends the hottest remaining
+     *  block starts the next chain, so blocks that never ran end up last.
+     *  The final block holds the program exit and always stays at the end.
+     */
+    public void layoutByFrequency(Map<Integer, Long> counts) {
+        ArrayList<BasicBlock> order = new ArrayList<>();
+        HashSet<BasicBlock> placed = new HashSet<>();
+        BasicBlock exit = blocks.get(blocks.size() - 1);
+        placed.add(exit);
+        BasicBlock current = entry();
+        while(current != null) {
+            order.add(current);
+            placed.add(current);
+            BasicBlock next = null;
+            for(BasicBlock successor: current.successors) {
+                if(!placed.contains(successor) && (next == null || count(counts, successor) > count(counts, next))) {
+                    next = successor;
+                }
+            }
+            if(next == null) {
+                for(BasicBlock block: blocks) {
+                    if(!placed.contains(block) && (next == null || count(counts, block) > count(counts, next))) {
+                        next = block;
+                    }
+                }
+            }
+            current = next;
+        }
+        if(exit != entry()) {
+            order.add(exit);
+        }
+        layout = order;
+    }
+
+    // Execution count of a block, zero when the profile has none
+    public static long count(Map<Integer, Long> counts, BasicBlock block) {
+        Long count = counts.get(block.id);
+        return count != null ? count : 0;
+    }
+
+    /*  Flattening the blocks in layout order back into IR code.
+     *  Jumps to the next block are dropped, branches whose target is the next
+     *  block are inverted, and a jump is added wherever a fall-through edge
+     *  no longer leads to the next block.
+     */
+    public ArrayList<IRInstruction> linearize() {
+        ArrayList<IRInstruction> code = new ArrayList<>();
+        for(ArrayList<IRInstruction> blockCode: linearizeBlocks()) {
+            code.addAll(blockCode);
+        }
+        return code;
+    }
+
+    // Same as linearize, but keeping the code of each layout block separate
+    public ArrayList<ArrayList<IRInstruction>> linearizeBlocks() {
+        // Labels have to exist before any block that jumps to them is emitted
+        for(int i = 0; i < layout.size(); i++) {
+            BasicBlock block = layout.get(i);
+            BasicBlock next = i + 1 < layout.size() ? layout.get(i + 1) : null;
+            if(block.fallThrough != null && block.fallThrough != next) {
+                labelOf(block.fallThrough);
+            }
+        }
+        ArrayList<ArrayList<IRInstruction>> code = new ArrayList<>();
+        for(int i = 0; i < layout.size(); i++) {
+            code.add(blockCode(layout.get(i), i + 1 < layout.size() ? layout.get(i + 1) : null));
+        }
+        return code;
+    }
+
+    // Code for one block given the block placed after it
+    ArrayList<IRInstruction> blockCode(BasicBlock block, BasicBlock next) {
+        ArrayList<IRInstruction> code = new ArrayList<>(block.instructions);
+        IRInstruction last = block.terminator();
+        if(last != null && last.isJump() && labels.get(last.target()) == next) {
+            code.remove(code.size() - 1);
+        }
+        else if(last != null && last.isBranch() && block.fallThrough != next) {
+            if(labels.get(last.target()) == next) {
+                String[] operands = last.operands.clone();
+                operands[operands.length - 1] = labelOf(block.fallThrough);
+                code.set(code.size() - 1, new IRInstruction(IRInstruction.invertBranch(last.opcode), operands));
+            }
+            else {
+                code.add(new IRInstruction("JUMP", labelOf(block.fallThrough)));
+            }
+        }
+        else if(last == null && block.fallThrough != null && block.fallThrough != next) {
+            code.add(new IRInstruction("JUMP", labelOf(block.fallThrough)));
+        }
+        return code;
+    }
+}
@@ -0,0 +1,424 @@
+// Import libraries
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+import java.io.*;
+import java.util.*;
+
+/*  Global class for persisting the parser's prediction DFA.
+ *  ANTLR builds the DFA lazily while parsing, so the first parse of every run
+ *  pays for the ATN closure computations. The cache writes out the warmed DFA
+ *  (states, edges and the ATN configurations behind them) after a training
+ *  corpus has been parsed, and loads it back into LittleParser._decisionToDFA
+ *  before the next parse.
+ *  Only the parser DFA is stored. Lexer DFA states depend on private
+ *  non-greedy bookkeeping in LexerATNConfig that cannot be rebuilt through
+ *  the runtime API, and they warm up after a handful of tokens anyway.
+ */
+class DFACache {
+    static final int MAGIC = 0x4C444641;
+    static final int VERSION = 2;
+
+    // Ids used for the shared singleton objects in the stream, each one distinct
+    static final int NULL_ID = -1;
+    static final int ERROR_ID = -2;
+    static final int EMPTY_CONTEXT_ID = -3;
+
+    // Semantic context tags
+    static final int SEM_NONE = 0;
+    static final int SEM_PREDICATE = 1;
+    static final int SEM_PRECEDENCE = 2;
+    static final int SEM_AND = 3;
+    static final int SEM_OR = 4;
+
+    // Saving the current contents of a DFA array to a file
+    public static void save(DFA[] decisionToDFA, String serializedATN, String fileName) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(serializedATN.hashCode());
+            out.writeInt(decisionToDFA.length);
+            for(DFA dfa: decisionToDFA) {
+                writeDFA(out, dfa);
+            }
+        }
+    }
+
+    /*  Loading a DFA cache file into a DFA array.
+     *  Returns false and leaves the DFA array untouched when the file is
+     *  missing, unreadable or was written for a different grammar.
+     */
+    public static boolean load(DFA[] decisionToDFA, ATN atn, String serializedATN, String fileName) {
+        File file = new File(fileName);
+        if(!file.isFile()) {
+            return false;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != serializedATN.hashCode()
+                    || in.readInt() != decisionToDFA.length) {
+                return false;
+            }
+            DFA[] loaded = new DFA[decisionToDFA.length];
+            for(int i = 0; i < loaded.length; i++) {
+                loaded[i] = new DFA(atn.getDecisionState(i), i);
+                readDFA(in, loaded[i], atn);
+            }
+            // Only publish once the whole file has been read successfully
+            for(int i = 0; i < loaded.length; i++) {
+                install(decisionToDFA[i], loaded[i]);
+            }
+            return true;
+        }
+        catch(IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Counting the DFA states of a DFA array, used for reporting
+    public static int stateCount(DFA[] decisionToDFA) {
+        int count = 0;
+        for(DFA dfa: decisionToDFA) {
+            count += dfa.states.size();
+        }
+        return count;
+    }
+
+    // Copying a freshly loaded DFA into the recognizer's shared DFA
+    static void install(DFA target, DFA loaded) {
+        synchronized(target.states) {
+            target.states.clear();
+            target.states.putAll(loaded.states);
+            if(target.isPrecedenceDfa()) {
+                target.s0.edges = loaded.s0.edges;
+            }
+            else {
+                target.s0 = loaded.s0;
+            }
+        }
+    }
+
+    // Method to write a single DFA
+    static void writeDFA(DataOutputStream out, DFA dfa) throws IOException {
+        // Numbering every reachable state, starting from s0
+        ArrayList<DFAState> states = new ArrayList<>();
+        IdentityHashMap<DFAState, Integer> stateIds = new IdentityHashMap<>();
+        ArrayList<PredictionContext> contexts = new ArrayList<>();
+        IdentityHashMap<PredictionContext, Integer> contextIds = new IdentityHashMap<>();
+        synchronized(dfa.states) {
+            if(dfa.s0 != null) {
+                numberState(dfa.s0, states, stateIds);
+            }
+            for(DFAState state: dfa.states.values()) {
+                numberState(state, states, stateIds);
+            }
+            for(int i = 0; i < states.size(); i++) {
+                DFAState state = states.get(i);
+                if(state.edges != null) {
+                    for(DFAState target: state.edges) {
+                        if(target != null && target != ATNSimulator.ERROR) {
+                            numberState(target, states, stateIds);
+                        }
+                    }
+                }
+                for(ATNConfig config: state.configs) {
+                    numberContext(config.context, contexts, contextIds);
+                }
+            }
+        }
+
+        out.writeBoolean(dfa.s0 != null);
+        out.writeInt(contexts.size());
+        for(PredictionContext context: contexts) {
+            out.writeInt(context.size());
+            for(int i = 0; i < context.size(); i++) {
+                out.writeInt(contextId(context.getParent(i), contextIds));
+                out.writeInt(context.getReturnState(i));
+            }
+        }
+
+        out.writeInt(states.size());
+        for(DFAState state: states) {
+            ATNConfigSet configs = state.configs;
+            out.writeInt(state.stateNumber);
+            out.writeBoolean(state.isAcceptState);
+            out.writeInt(state.prediction);
+            out.writeBoolean(state.requiresFullContext);
+            out.writeBoolean(configs.fullCtx);
+            out.writeInt(configs.uniqueAlt);
+            out.writeBoolean(configs.hasSemanticContext);
+            out.writeBoolean(configs.dipsIntoOuterContext);
+            out.writeInt(configs.size());
+            for(ATNConfig config: configs) {
+                out.writeInt(config.state.stateNumber);
+                out.writeInt(config.alt);
+                out.writeInt(contextId(config.context, contextIds));
+                out.writeInt(config.reachesIntoOuterContext);
+                writeSemanticContext(out, config.semanticContext);
+            }
+            if(state.predicates == null) {
+                out.writeInt(-1);
+            }
+            else {
+                out.writeInt(state.predicates.length);
+                for(DFAState.PredPrediction predicate: state.predicates) {
+                    out.writeInt(predicate.alt);
+                    writeSemanticContext(out, predicate.pred);
+                }
+            }
+        }
+
+        for(DFAState state: states) {
+            if(state.edges == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(state.edges.length);
+            for(DFAState target: state.edges) {
+                if(target == null) {
+                    out.writeInt(NULL_ID);
+                }
+                else if(target == ATNSimulator.ERROR) {
+                    out.writeInt(ERROR_ID);
+                }
+                else {
+                    out.writeInt(stateIds.get(target));
+                }
+            }
+        }
+    }
+
+    // Method to read a single DFA written by writeDFA
+    static void readDFA(DataInputStream in, DFA dfa, ATN atn) throws IOException {
+        boolean hasStart = in.readBoolean();
+
+        // Contexts are written parents first, so every parent id is already known
+        int contextCount = in.readInt();
+        PredictionContext[] contexts = new PredictionContext[contextCount];
+        for(int i = 0; i < contextCount; i++) {
+            int size = in.readInt();
+            PredictionContext[] parents = new PredictionContext[size];
+            int[] returnStates = new int[size];
+            for(int j = 0; j < size; j++) {
+                parents[j] = context(in.readInt(), contexts);
+                returnStates[j] = in.readInt();
+            }
+            if(size == 1) {
+                contexts[i] = SingletonPredictionContext.create(parents[0], returnStates[0]);
+            }
+            else {
+                contexts[i] = new ArrayPredictionContext(parents, returnStates);
+            }
+        }
+
+        int stateCount = in.readInt();
+        DFAState[] states = new DFAState[stateCount];
+        for(int i = 0; i < stateCount; i++) {
+            int stateNumber = in.readInt();
+            boolean isAcceptState = in.readBoolean();
+            int prediction = in.readInt();
+            boolean requiresFullContext = in.readBoolean();
+            LoadedConfigSet configs = new LoadedConfigSet(in.readBoolean());
+            int uniqueAlt = in.readInt();
+            boolean hasSemanticContext = in.readBoolean();
+            boolean dipsIntoOuterContext = in.readBoolean();
+            int configCount = in.readInt();
+            for(int j = 0; j < configCount; j++) {
+                ATNState atnState = atn.states.get(in.readInt());
+                int alt = in.readInt();
+                PredictionContext context = context(in.readInt(), contexts);
+                int reachesIntoOuterContext = in.readInt();
+                ATNConfig config = new ATNConfig(atnState, alt, context, readSemanticContext(in));
+                config.reachesIntoOuterContext = reachesIntoOuterContext;
+                configs.add(config);
+            }
+            configs.uniqueAlt = uniqueAlt;
+            configs.hasSemanticContext = hasSemanticContext;
+            configs.dipsIntoOuterContext = dipsIntoOuterContext;
+            if(requiresFullContext) {
+                configs.setConflictingAlts(PredictionMode.getAlts(PredictionMode.getConflictingAltSubsets(configs)));
+            }
+            configs.setReadonly(true);
+
+            DFAState state = new DFAState(configs);
+            state.stateNumber = stateNumber;
+            state.isAcceptState = isAcceptState;
+            state.prediction = prediction;
+            state.requiresFullContext = requiresFullContext;
+            int predicateCount = in.readInt();
+            if(predicateCount >= 0) {
+                state.predicates = new DFAState.PredPrediction[predicateCount];
+                for(int j = 0; j < predicateCount; j++) {
+                    int alt = in.readInt();
+                    state.predicates[j] = new DFAState.PredPrediction(readSemanticContext(in), alt);
+                }
+            }
+            states[i] = state;
+        }
+
+        for(int i = 0; i < stateCount; i++) {
+            int edgeCount = in.readInt();
+            if(edgeCount < 0) {
+                continue;
+            }
+            states[i].edges = new DFAState[edgeCount];
+            for(int j = 0; j < edgeCount; j++) {
+                int target = in.readInt();
+                if(target == ERROR_ID) {
+                    states[i].edges[j] = ATNSimulator.ERROR;
+                }
+                else if(target != NULL_ID) {
+                    states[i].edges[j] = states[target];
+                }
+            }
+        }
+
+        // State 0 is s0 when the DFA had one; a precedence DFA keeps its s0 out of the state map
+        for(int i = 0; i < stateCount; i++) {
+            if(i == 0 && hasStart && dfa.isPrecedenceDfa()) {
+                continue;
+            }
+            dfa.states.put(states[i], states[i]);
+        }
+        if(hasStart) {
+            if(dfa.isPrecedenceDfa()) {
+                dfa.s0.edges = states[0].edges != null ? states[0].edges : new DFAState[0];
+            }
+            else {
+                dfa.s0 = states[0];
+            }
+        }
+    }
+
+    // Method to give a DFA state an id the first time it is seen
+    static void numberState(DFAState state, ArrayList<DFAState> states, IdentityHashMap<DFAState, Integer> stateIds) {
+        if(!stateIds.containsKey(state)) {
+            stateIds.put(state, states.size());
+            states.add(state);
+        }
+    }
+
+    // Method to number a prediction context graph in postorder so parents come first
+    static void numberContext(PredictionContext root, ArrayList<PredictionContext> contexts,
+                              IdentityHashMap<PredictionContext, Integer> contextIds) {
+        if(root == null || root == PredictionContext.EMPTY || contextIds.containsKey(root)) {
+            return;
+        }
+        Stack<PredictionContext> stack = new Stack<>();
+        Stack<Integer> nextParent = new Stack<>();
+        stack.push(root);
+        nextParent.push(0);
+        while(!stack.isEmpty()) {
+            PredictionContext current = stack.peek();
+            int index = nextParent.pop();
+            if(index < current.size()) {
+                nextParent.push(index + 1);
+                PredictionContext parent = current.getParent(index);
+                if(parent != null && parent != PredictionContext.EMPTY && !contextIds.containsKey(parent)) {
+                    stack.push(parent);
+                    nextParent.push(0);
+                }
+                continue;
+            }
+            stack.pop();
+            if(!contextIds.containsKey(current)) {
+                contextIds.put(current, contexts.size());
+                contexts.add(current);
+            }
+        }
+    }
+
+    // Method to look up a context id while writing
+    static int contextId(PredictionContext context, IdentityHashMap<PredictionContext, Integer> contextIds) {
+        if(context == null) {
+            return NULL_ID;
+        }
+        if(context == PredictionContext.EMPTY) {
+            return EMPTY_CONTEXT_ID;
+        }
+        return contextIds.get(context);
+    }
+
+    // Method to resolve a context id while reading
+    static PredictionContext context(int id, PredictionContext[] contexts) {
+        if(id == NULL_ID) {
+            return null;
+        }
+        if(id == EMPTY_CONTEXT_ID) {
+            return PredictionContext.EMPTY;
+        }
+        return contexts[id];
+    }
+
+    // Method to write a semantic context tree
+    static void writeSemanticContext(DataOutputStream out, SemanticContext context) throws IOException {
+        if(context == null || context == SemanticContext.NONE) {
+            out.writeByte(SEM_NONE);
+        }
+        else if(context instanceof SemanticContext.Predicate) {
+            SemanticContext.Predicate predicate = (SemanticContext.Predicate) context;
+            out.writeByte(SEM_PREDICATE);
+            out.writeInt(predicate.ruleIndex);
+            out.writeInt(predicate.predIndex);
+            out.writeBoolean(predicate.isCtxDependent);
+        }
+        else if(context instanceof SemanticContext.PrecedencePredicate) {
+            out.writeByte(SEM_PRECEDENCE);
+            out.writeInt(((SemanticContext.PrecedencePredicate) context).precedence);
+        }
+        else if(context instanceof SemanticContext.Operator) {
+            Collection<SemanticContext> operands = ((SemanticContext.Operator) context).getOperands();
+            out.writeByte(context instanceof SemanticContext.AND ? SEM_AND : SEM_OR);
+            out.writeInt(operands.size());
+            for(SemanticContext operand: operands) {
+                writeSemanticContext(out, operand);
+            }
+        }
+        else {
+            throw new IOException("unsupported semantic context " + context);
+        }
+    }
+
+    // Method to read a semantic context tree
+    static SemanticContext readSemanticContext(DataInputStream in) throws IOException {
+        int tag = in.readByte();
+        switch(tag) {
+            case SEM_NONE:
+                return SemanticContext.NONE;
+            case SEM_PREDICATE:
+                int ruleIndex = in.readInt();
+                int predIndex = in.readInt();
+                return new SemanticContext.Predicate(ruleIndex, predIndex, in.readBoolean());
+            case SEM_PRECEDENCE:
+                return new SemanticContext.PrecedencePredicate(in.readInt());
+            case SEM_AND:
+            case SEM_OR:
+                int count = in.readInt();
+                SemanticContext result = null;
+                for(int i = 0; i < count; i++) {
+                    SemanticContext operand = readSemanticContext(in);
+                    if(result == null) {
+                        result = operand;
+                    }
+                    else if(tag == SEM_AND) {
+                        result = new SemanticContext.AND(result, operand);
+                    }
+                    else {
+                        result = new SemanticContext.OR(result, operand);
+                    }
+                }
+                return result;
+        }
+        throw new IOException("bad semantic context tag " + tag);
+    }
+
+    // Config set that lets the loader restore the conflicting alternatives of full-context states
+    static class LoadedConfigSet extends ATNConfigSet {
+        public LoadedConfigSet(boolean fullCtx) {
+            super(fullCtx);
+        }
+
+        void setConflictingAlts(BitSet alts) {
+            this.conflictingAlts = alts;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+// Import libraries
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.tree.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/*  Benchmark of direct execution against the Tiny path for one program.
+ *  Both paths start from the same parse tree and build their own AST. The
+ *  Tiny path generates the IR and the Tiny code but does not run it, there
+ *  is no Tiny simulator in the JVM. The direct path compiles the AST to
+ *  closures and runs them on the given input. Runs of the two paths are
+ *  interleaved after a warm-up and the medians are printed.
+ *  Usage: java DirectExecutionBenchmark [--input FILE] [--runs N] [--optimize] program.little
+ */
+public class DirectExecutionBenchmark {
+    public static void main(String[] args) throws Exception {
+        // Reading command line options
+        String programFile = null;
+        byte[] input = new byte[0];
+        int runs = 200;
+        boolean optimize = false;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("--input") && i + 1 < args.length) {
+                input = Files.readAllBytes(Paths.get(args[++i]));
+            }
+            else if(args[i].equals("--runs") && i + 1 < args.length) {
+                runs = Integer.parseInt(args[++i]);
+            }
+            else if(args[i].equals("--optimize")) {
+                optimize = true;
+            }
+            else {
+                programFile = args[i];
+            }
+        }
+        if(programFile == null) {
+            System.out.println("Usage: java DirectExecutionBenchmark [--input FILE] [--runs N] [--optimize] program.little");
+            return;
+        }
+        ParseTree parseTree = Driver.parse(CharStreams.fromFileName(programFile));
+
+        // Code and program output is thrown away while timing
+        PrintStream console = System.out;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+
+        long[] tinyTimes = new long[runs];
+        long[] compileTimes = new long[runs];
+        long[] executeTimes = new long[runs];
+        for(int warmUp = 0; warmUp < runs / 4 + 1; warmUp++) {
+            tinyPath(parseTree, optimize);
+            ClosureCompiler.compile(buildAST(parseTree)).run(new ByteArrayInputStream(input), discard);
+        }
+        for(int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            tinyPath(parseTree, optimize);
+            tinyTimes[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ClosureCompiler.Program program = ClosureCompiler.compile(buildAST(parseTree));
+            compileTimes[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            program.run(new ByteArrayInputStream(input), discard);
+            executeTimes[i] = System.nanoTime() - start;
+        }
+
+        System.setOut(console);
+        System.out.println("Median of " + runs + " runs in microseconds");
+        System.out.println("Tiny path, AST to Tiny code" + (optimize ? " (optimized)" : "") + ", not run: " + median(tinyTimes));
+        System.out.println("Direct, AST to closures: " + median(compileTimes));
+        System.out.println("Direct, running the closures: " + median(executeTimes));
+        System.out.println("Direct, total: " + (median(compileTimes) + median(executeTimes)));
+    }
+
+    // Method to walk the parse tree into a fresh AST
+    static Driver.ASTBuilder buildAST(ParseTree parseTree) {
+        Driver.ASTBuilder ast = new Driver.ASTBuilder();
+        new ParseTreeWalker().walk(ast, parseTree);
+        return ast;
+    }
+
+    // Method to generate the IR and Tiny code like Driver does
+    static void tinyPath(ParseTree parseTree, boolean optimize) {
+        Driver.ASTBuilder ast = buildAST(parseTree);
+        ast.optimize = optimize;
+        ast.IRCodeGenerator();
+        ast.tinyCodeFormatting();
+    }
+
+    // Median of the times in microseconds
+    static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1000;
+    }
+}
@@ -14,48 +14,6 @@ import java.util.*;
 import java.util.ArrayList;
 import java.util.Stack;
 
-// Global class for symbol table elements
-class SymbolTableElement {
-    String name = null;
-    String type = null;
-    String value = null;
-
-    // Base constructor
-    public SymbolTableElement() {}
-
-    // Symbol table constructors
-    public SymbolTableElement(String name, String type) {
-        this.name = name;
-        this.type = type;
-    }
-    public SymbolTableElement(String name, String type, String value) {
-        this.name = name;
-        this.type = type;
-        this.value = value;
-    }
-    // Symbol table element getters
-    public String getName() { return this.name; }
-    public String getType() { return this.type; }
-    public String getValue() { return this.value; }
-
-    // toString method
-    @Override public String toString() {
-        if (this.value != null) {
-            return ("name " + this.name + " type " + this.type + "value " + this.value + "\n");
-        }
-        else {
-            return ("name " + this.name + " type " + this.type + "\n");
-        }
-    }
-}
-
-// Global class for AST
-class AST {
-    AST left;
-    AST right;
-    String value;
-}
-
 // Global class for CodeObject
 class CodeObject {
     String code;
@@ -90,48 +48,174 @@ class CodeObject {
 
 // Main Driver class
 public class Driver {
+    // Options that are followed by a value
+    static final List<String> VALUE_OPTIONS = Arrays.asList("--dfa-cache", "--input", "--object", "--link", "--profile",
+            "--registers", "--train-dfa");
 
     // Main method
     public static void main(String[] args) throws Exception {
-        // Reading character stream into program
-        CharStream chars = CharStreams.fromStream(System.in);
+        try {
+            compile(args);
+        }
+        catch(CompileError e) {
+            System.out.println(e.getMessage());
+        }
+    }
 
-        // Lexer separates character stream into tokens
-        LittleLexer lexer = new LittleLexer(chars);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
+    // Compiling the program on standard input as the command line options say, errors stop it with a CompileError
+    public static void compile(String[] args) throws IOException {
+        // Reading command line options
+        String dfaCacheFile = null;
+        String profileFile = null;
+        String inputFile = null;
+        String objectFile = null;
+        ArrayList<String> linkFiles = new ArrayList<>();
+        boolean run = false;
+        boolean optimize = false;
+        boolean instrument = false;
+        int registerCount = 0;
+        for(int i = 0; i < args.length; i++) {
+            if(VALUE_OPTIONS.contains(args[i]) && i + 1 == args.length) {
+                throw new CompileError("OPTION ERROR " + args[i] + " needs a value");
+            }
+            if(args[i].equals("--dfa-cache")) {
+                dfaCacheFile = args[++i];
+            }
+            else if(args[i].equals("--optimize")) {
+                optimize = true;
+            }
+            else if(args[i].equals("--run")) {
+                run = true;
+            }
+            else if(args[i].equals("--input")) {
+                inputFile = args[++i];
+            }
+            else if(args[i].equals("--object")) {
+                objectFile = args[++i];
+            }
+            else if(args[i].equals("--link")) {
+                linkFiles.add(args[++i]);
+            }
+            else if(args[i].equals("--instrument")) {
+                instrument = true;
+            }
+            else if(args[i].equals("--profile")) {
+                profileFile = args[++i];
+            }
+            else if(args[i].equals("--registers")) {
+                try {
+                    registerCount = Integer.parseInt(args[++i]);
+                }
+                catch(NumberFormatException e) {
+                    registerCount = 0;
+                }
+                // One register is kept as scratch, so the temporaries need at least one more
+                if(registerCount < 2) {
+                    throw new CompileError("OPTION ERROR --registers needs a number of at least 2, not " + args[i]);
+                }
+            }
+            else if(args[i].equals("--train-dfa")) {
+                trainDFA(args[i + 1], Arrays.copyOfRange(args, i + 2, args.length));
+                return;
+            }
+            else {
+                throw new CompileError("OPTION ERROR unknown option " + args[i]);
+            }
+        }
 
-        // Parsing tokens to create parse tree
-        LittleParser parser = new LittleParser(tokens);
-        parser.removeErrorListeners();
-        parser.addErrorListener(new VerboseListener());
-        ParseTree parseTree = parser.program();
+        // Preloading the warmed prediction DFA if a cache was given
+        if(dfaCacheFile != null) {
+            DFACache.load(LittleParser._decisionToDFA, LittleParser._ATN, LittleParser._serializedATN, dfaCacheFile);
+        }
+
+        // Reading character stream into program
+        CharStream chars = CharStreams.fromStream(System.in);
+        VerboseListener syntaxErrors = new VerboseListener();
+        ParseTree parseTree = parse(chars, syntaxErrors);
 
         // Creating walker to walk the parse tree nodes
         ParseTreeWalker treeWalker = new ParseTreeWalker();
 
+        // The builders need a well formed parse tree, so syntax errors stop the compile like in Compiler
+        for(String error: syntaxErrors.errors) {
+            System.err.println(error);
+        }
+        if(!syntaxErrors.errors.isEmpty()) {
+            throw new CompileError("SYNTAX ERROR");
+        }
+
         // Building symbol table using the parse tree
         SymbolTableBuilder symbolTableBuilder = new SymbolTableBuilder();
         treeWalker.walk(symbolTableBuilder, parseTree);
-        symbolTableBuilder.formattedPrint();
+        if(!run) {
+            symbolTableBuilder.formattedPrint();
+        }
 
-        // Walking the parse tree again to create the AST
+        // Walking the parse tree again to create the AST, against the interfaces of the linked libraries
         ASTBuilder ast = new ASTBuilder();
+        for(String linkFile: linkFiles) {
+            ast.link(ObjectFile.read(linkFile));
+        }
         treeWalker.walk(ast, parseTree);
 
+        // Running the program directly instead of generating code
+        if(run) {
+            InputStream input = inputFile != null ? new FileInputStream(inputFile) : new ByteArrayInputStream(new byte[0]);
+            ClosureCompiler.compile(ast).run(input, System.out);
+            return;
+        }
+
         // Generate IR code after walking
+        ast.optimize = optimize;
         ast.IRCodeGenerator();
 
         // Generate tiny code from IR code
+        ast.instrument = instrument;
+        ast.registerCount = registerCount;
+        ast.objectFileName = objectFile;
+        if(profileFile != null) {
+            ast.profile = ProfileData.read(profileFile);
+        }
         ast.tinyCodeFormatting();
+    }
+
+    // Method to lex and parse a character stream into a parse tree
+    public static ParseTree parse(CharStream chars) {
+        return parse(chars, new VerboseListener());
+    }
+
+    // Same, with the syntax errors of the lexer and the parser going to the given listener
+    public static ParseTree parse(CharStream chars, VerboseListener listener) {
+        // Lexer separates character stream into tokens
+        LittleLexer lexer = new LittleLexer(chars);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+
+        // Parsing tokens to create parse tree
+        LittleParser parser = new LittleParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(listener);
+        return parser.program();
+    }
 
+    // Parsing a training corpus and saving the warmed prediction DFA
+    public static void trainDFA(String cacheFile, String[] corpus) throws IOException {
+        for(String fileName: corpus) {
+            parse(CharStreams.fromFileName(fileName));
+        }
+        DFACache.save(LittleParser._decisionToDFA, LittleParser._serializedATN, cacheFile);
+        System.out.println("Saved " + DFACache.stateCount(LittleParser._decisionToDFA) + " DFA states from " +
+                corpus.length + " files to " + cacheFile);
     }
 
-    // Extending BaseErrorListener into a more verbose listener for our program
+    // Extending BaseErrorListener into a more verbose listener for our program, it keeps every syntax error
     public static class VerboseListener extends BaseErrorListener {
+        ArrayList<String> errors = new ArrayList<>();
+
         @Override
         public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLIne, String msg, RecognitionException e) {
-            List<String> stack = ((Parser) recognizer).getRuleInvocationStack();
-            Collections.reverse(stack);
+            errors.add("line " + line + ":" + charPositionInLIne + " " + msg);
         }
     }
 
@@ -153,6 +237,21 @@ public class Driver {
         boolean elseStatement = false;
         boolean errorFound = false;
 
+        // Stream the formatted symbol table is printed to
+        PrintStream out = System.out;
+
+        // Method to clear the table and positions so the builder can walk another program
+        public void reset() {
+            scopedTable.clear();
+            symbolTable = new ArrayList<>();
+            symbolScope.clear();
+            symbolTableIndex = 0;
+            stackIndex = 0;
+            statementBlockCount = 1;
+            elseStatement = false;
+            errorFound = false;
+        }
+
         // Overriding the standard parser context methods in order to create an AST
         // Enter program context
         @Override public void enterProgram(LittleParser.ProgramContext ctx) {
@@ -294,9 +393,7 @@ public class Driver {
             for(int i = 0; i < table.size(); i++) {
                 if(Objects.equals(table.get(i).getType(), element.getType()) &&
                 Objects.equals(table.get(i).getName(), element.getName())) {
-                    System.out.println("DECLARATION ERROR " + element.getName());
-                    System.exit(0);
-                    return true;
+                    throw new CompileError("DECLARATION ERROR " + element.getName());
                 }
             }
             return false;
@@ -310,24 +407,24 @@ public class Driver {
                 for(Map.Entry<String, ArrayList<SymbolTableElement>> element : scopedTable.entrySet()) {
                     entry = element.getKey();
                     if(element.getValue().size() == 0) {
-                        System.out.println("Symbol Table " + entry + "\n");
+                        out.println("Symbol Table " + entry + "\n");
                         continue;
                     }
                     value = element.getValue().size();
-                    System.out.println("Symbol table " + entry);
+                    out.println("Symbol table " + entry);
                     for(int i = 0; i < value; i++) {
                         if(Objects.equals(element.getValue().get(i).getType(), "STRING")) {
-                            System.out.println("name " + element.getValue().get(i).getName() +
+                            out.println("name " + element.getValue().get(i).getName() +
                                     " type " + element.getValue().get(i).getType() +
                                     " value " + element.getValue().get(i). getValue() + "\n");
 
                         }
                         else {
-                            System.out.print("name " + element.getValue().get(i).getName() +
+                            out.print("name " + element.getValue().get(i).getName() +
                                     " type " + element.getValue().get(i).getType() + "\n");
                         }
                     }
-                    System.out.println();
+                    out.println();
                 }
             }
         }
@@ -339,19 +436,155 @@ public class Driver {
         Hashtable<Integer, String> variableOrder;
         Hashtable<String, String> stringValue;
         Stack<AST> astTrees;
+        Stack<AST> expressions;
+        // Labels of the enclosing WHILE and IF statements, a false condition branches to the second one
+        Stack<String[]> statementLabels;
         Stack<CodeObject> irRepCode;
         Stack<String> tinyCode;
         int tempIRNumber = 0;
+        int labelNumber = 0;
         int  variableCount = 0;
 
+        /*  Functions that can be called, the ones of this program in the order
+         *  they are defined and the ones of linked object files. Inside a
+         *  function, parameters are the operands $P1..$Pn, local variables
+         *  $L1..$Lm and the return value $R, which the Tiny code turns into
+         *  offsets from the frame pointer.
+         */
+        LinkedHashMap<String, FunctionSymbol> functions;
+        ArrayList<FunctionSymbol> definedFunctions;
+        ArrayList<ObjectFile> libraries;
+        FunctionSymbol currentFunction = null;
+        Stack<HashMap<String, String[]>> localScopes;
+        int localCount = 0;
+
+        // Back end options
+        boolean optimize = false;
+        boolean instrument = false;
+        ProfileData profile = null;
+        int registerCount = 0;
+        RegisterAllocator registers;
+
+        // Position in the code being converted to Tiny, and the registers saved around the current call
+        StackFrame frame;
+        ArrayList<IRInstruction> linearCode;
+        int instructionIndex = 0;
+        ArrayList<String> callSaves = new ArrayList<>();
+        String objectFileName = null;
+
+        // Streams for the listing and for the optimization reports
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+
         // Constructor
         public ASTBuilder() {
             variableType = new Hashtable<>();
             variableOrder = new Hashtable<>();
             stringValue = new Hashtable<>();
             astTrees = new Stack<>();
+            expressions = new Stack<>();
+            statementLabels = new Stack<>();
             irRepCode = new Stack<CodeObject>();
             tinyCode = new Stack<>();
+            functions = new LinkedHashMap<>();
+            definedFunctions = new ArrayList<>();
+            libraries = new ArrayList<>();
+            localScopes = new Stack<>();
+        }
+
+        // Method to clear everything built for the last program and the back end options
+        public void reset() {
+            variableType.clear();
+            variableOrder.clear();
+            stringValue.clear();
+            astTrees.clear();
+            expressions.clear();
+            statementLabels.clear();
+            irRepCode.clear();
+            tinyCode.clear();
+            tempIRNumber = 0;
+            labelNumber = 0;
+            variableCount = 0;
+            functions.clear();
+            definedFunctions.clear();
+            libraries.clear();
+            currentFunction = null;
+            localScopes.clear();
+            localCount = 0;
+            optimize = false;
+            instrument = false;
+            profile = null;
+            registerCount = 0;
+            registers = null;
+            frame = null;
+            linearCode = null;
+            instructionIndex = 0;
+            callSaves = new ArrayList<>();
+            objectFileName = null;
+        }
+
+        // Method to make the functions and globals of a compiled library known to the program
+        public void link(ObjectFile library) {
+            libraries.add(library);
+            for(FunctionSymbol function: library.getExports()) {
+                functions.put(function.getName(), function);
+            }
+            for(SymbolTableElement global: library.getGlobals()) {
+                variableType.putIfAbsent(global.getName(), global.getType());
+                if(global.getValue() != null) {
+                    stringValue.putIfAbsent(global.getName(), global.getValue());
+                }
+            }
+        }
+
+        // Collecting the functions of the program first, so calls can come before definitions
+        @Override public void enterProgram(LittleParser.ProgramContext ctx) {
+            LittleParser.Func_declarationsContext declarations = ctx.pgm_body().func_declarations();
+            while(declarations.func_decl() != null) {
+                FunctionSymbol function = FunctionSymbol.of(declarations.func_decl());
+                functions.put(function.getName(), function);
+                definedFunctions.add(function);
+                declarations = declarations.func_declarations();
+            }
+        }
+
+        // Function marker nodes, the parameters are the outermost scope of the function
+        @Override public void enterFunc_decl(LittleParser.Func_declContext ctx) {
+            currentFunction = functions.get(ctx.id().getText());
+            localCount = 0;
+            localScopes.clear();
+            HashMap<String, String[]> parameters = new HashMap<>();
+            for(int i = 0; i < currentFunction.parameterNames.size(); i++) {
+                parameters.put(currentFunction.parameterNames.get(i), new String[] {"$P" + (i + 1), currentFunction.parameterTypes.get(i)});
+            }
+            localScopes.push(parameters);
+            astTrees.push(markerNode("FUNCTION " + currentFunction.getName()));
+        }
+
+        @Override public void exitFunc_decl(LittleParser.Func_declContext ctx) {
+            astTrees.push(markerNode("ENDFUNCTION " + currentFunction.getName()));
+            currentFunction = null;
+        }
+
+        // Operand and type of a variable, the innermost declaration wins
+        String[] resolve(String name) {
+            for(int i = localScopes.size() - 1; i >= 0; i--) {
+                String[] local = localScopes.get(i).get(name);
+                if(local != null) {
+                    return local;
+                }
+            }
+            return new String[] {name, variableType.get(name)};
+        }
+
+        // Operands and types of a READ or WRITE list, as "operand:TYPE,operand:TYPE"
+        String resolveList(String idList) {
+            StringBuilder list = new StringBuilder();
+            for(String name: idList.split(",")) {
+                String[] variable = resolve(name);
+                list.append(list.length() > 0 ? "," : "").append(variable[0]).append(":").append(variable[1]);
+            }
+            return list.toString();
         }
 
         // Float or Integer variables AST nodes
@@ -359,117 +592,274 @@ public class Driver {
             String[] variables = (ctx.id_list().getText()).split(",");
 
             for(int i = 0; i < variables.length; i++) {
+                if(currentFunction != null) {
+                    localCount++;
+                    localScopes.peek().put(variables[i], new String[] {"$L" + localCount, ctx.var_type().getText()});
+                    continue;
+                }
                 variableType.put(variables[i], ctx.var_type().getText());
                 variableOrder.put(variableCount, variables[i]);
                 variableCount++;
             }
         }
 
+        /*  Expressions are built bottom up on a stack of subtrees as their rules
+         *  are exited. The prefix rules leave an operation with only its left
+         *  operand set, and the factor that follows completes it, which keeps
+         *  operators left associative and '*' and '/' above '+' and '-'.
+         */
+
         // Assignment AST nodes
-        @Override public void enterAssign_expr(LittleParser.Assign_exprContext ctx) {
+        @Override public void exitAssign_expr(LittleParser.Assign_exprContext ctx) {
             AST root = new AST();
             root.value = ":=";
             AST leftNode = new AST();
-            leftNode.value = "VARREF " + ctx.id().getText() + " " + variableType.get(ctx.id().getText());
+            String[] variable = resolve(ctx.id().getText());
+            leftNode.value = "VARREF " + variable[0] + " " + variable[1];
             root.left = leftNode;
+            root.right = expressions.pop();
             astTrees.push(root);
         }
 
         // AST nodes for addition or subtraction
-        @Override public void enterAddop(LittleParser.AddopContext ctx) {
-            AST root = astTrees.pop();
-            AST rightNode = new AST();
-            if(root.right != null) {
-                AST temp = root.right;
-                rightNode.value = "ADDOP " + ctx.getText();
-                rightNode.left = temp;
-                root.right = rightNode;
-                astTrees.push(root);
+        @Override public void exitExpr_prefix(LittleParser.Expr_prefixContext ctx) {
+            if(ctx.addop() == null) {
                 return;
             }
-            rightNode.value = "ADDOP " + ctx.getText();
-            root.right = rightNode;
-            astTrees.push(root);
+            AST node = new AST();
+            node.value = "ADDOP " + ctx.addop().getText();
+            node.left = completeOperation(ctx.expr_prefix().addop() != null);
+            expressions.push(node);
+        }
+
+        @Override public void exitExpr(LittleParser.ExprContext ctx) {
+            expressions.push(completeOperation(ctx.expr_prefix().addop() != null));
         }
 
         // Multiplication or division node for AST
-	    @Override public void enterMulop(LittleParser.MulopContext ctx) {
-            AST root = astTrees.pop();
-            AST rightNode = new AST();
-            if(root.right != null){
-                AST temp = root.right;
-                rightNode.value = "MULOP " + ctx.getText();
-                rightNode.left = temp; //ex: e+f 'e' will be the leftchild of '+'
-                root.right = rightNode;
-                astTrees.push(root);
+        @Override public void exitFactor_prefix(LittleParser.Factor_prefixContext ctx) {
+            if(ctx.mulop() == null) {
                 return;
             }
-            rightNode.value = "MULOP " + ctx.getText();
-            root.right = rightNode;
-            astTrees.push(root);
-	    }
+            AST node = new AST();
+            node.value = "MULOP " + ctx.mulop().getText();
+            node.left = completeOperation(ctx.factor_prefix().mulop() != null);
+            expressions.push(node);
+        }
+
+        @Override public void exitFactor(LittleParser.FactorContext ctx) {
+            expressions.push(completeOperation(ctx.factor_prefix().mulop() != null));
+        }
+
+        // Method to give the operation left by a prefix rule its right operand
+        AST completeOperation(boolean hasPrefix) {
+            AST operand = expressions.pop();
+            if(!hasPrefix) {
+                return operand;
+            }
+            AST operation = expressions.pop();
+            operation.right = operand;
+            labelRegisterNeed(operation);
+            return operation;
+        }
+
+        /*  Sethi-Ullman numbering, done as each expression node is completed.
+         *  A variable is used where it is stored and needs no register. A
+         *  constant is stored to a temporary just before the instruction that
+         *  uses it, so an operation needs a register for each operand that is
+         *  not a variable. The result takes the register of the left operand
+         *  when that one dies at the instruction, so it only needs a register
+         *  of its own when the left operand is a variable. Before that, the
+         *  result of the operand evaluated first is held while the other one
+         *  is evaluated.
+         *  Call arguments are evaluated in order and held until they are pushed.
+         */
+        void labelRegisterNeed(AST node) {
+            if(node.value.startsWith("CALL")) {
+                int held = 0;
+                node.registerNeed = 1;
+                node.calls = true;
+                for(AST argument = node.left; argument != null; argument = argument.right) {
+                    node.registerNeed = Math.max(node.registerNeed, held + argument.left.registerNeed);
+                    held += argument.left.value.startsWith("VARREF") ? 0 : 1;
+                }
+                node.registerNeed = Math.max(node.registerNeed, held);
+            }
+            else if(node.left != null) {
+                AST first = evaluateRightFirst(node) ? node.right : node.left;
+                AST second = first == node.left ? node.right : node.left;
+                int operands = (node.left.value.startsWith("VARREF") ? 0 : 1) + (node.right.value.startsWith("VARREF") ? 0 : 1);
+                int result = node.left.value.startsWith("VARREF") ? 1 : 0;
+                int held = first.value.startsWith("VARREF") || first.value.startsWith("CONSTANT") ? 0 : 1;
+                node.registerNeed = Math.max(Math.max(first.registerNeed, held + second.registerNeed), operands + result);
+                node.calls = node.left.calls || node.right.calls;
+            }
+        }
+
+        /*  The code of the operand that needs more registers goes first. The
+         *  instruction still takes its operands in source order, so this holds
+         *  for '-' and '/' as well. Calls can have side effects, so operands
+         *  with calls are always evaluated from left to right.
+         */
+        static boolean evaluateRightFirst(AST node) {
+            return node.right.registerNeed > node.left.registerNeed && !node.left.calls && !node.right.calls;
+        }
 
         // AST node for String declaration.
         @Override public void enterString_decl(LittleParser.String_declContext ctx) {
 		    AST root = new AST();
-            root.value = "STRING " + ctx.id().getText() + " " + ctx.str().getText();
-            variableType.put(ctx.id().getText(), "STRING");
-            variableOrder.put(variableCount, ctx.id().getText());
-            stringValue.put(ctx.id().getText(), ctx.str().getText());
+            String name = ctx.id().getText();
+            // Tiny strings are global, so a string declared in a function gets a name of its own
+            if(currentFunction != null) {
+                String local = currentFunction.getName() + "_" + name;
+                for(int i = 2; variableType.containsKey(local); i++) {
+                    local = currentFunction.getName() + "_" + name + "_" + i;
+                }
+                localScopes.peek().put(name, new String[] {local, "STRING"});
+                name = local;
+            }
+            root.value = "STRING " + name + " " + ctx.str().getText();
+            variableType.put(name, "STRING");
+            variableOrder.put(variableCount, name);
+            stringValue.put(name, ctx.str().getText());
             variableCount++;
             astTrees.push(root);
 	    }
 
-        // AST node for primary
-        @Override public void enterPrimary(LittleParser.PrimaryContext ctx) {
-            AST root = astTrees.pop();
-            AST rightNode = root.right;
+        // AST node for primary, a parenthesized expression is already on the stack
+        @Override public void exitPrimary(LittleParser.PrimaryContext ctx) {
+            if(ctx.expr() != null) {
+                return;
+            }
+            AST node = new AST();
             String mainValue = ctx.getText();
-    
-            boolean number = true;
-            boolean parenthesisExpr = mainValue.startsWith("(");
-            number = (mainValue).matches("-?\\d+(\\.\\d+)?");
-            if( number ) {
-                mainValue = "CONSTANT " + ctx.getText();
-            } else {
-                mainValue = "VARREF " + ctx.getText() + " " + variableType.get(ctx.getText());
+            if(ctx.id() == null) {
+                node.value = "CONSTANT " + mainValue;
             }
-    
-            if(rightNode == null){
-                rightNode = new AST();
-                rightNode.value = mainValue;
-    
-                // Ignoring parantheses 
-                if(parenthesisExpr){
-                    root.right = null;
-                } 
-                else {
-                    root.right = rightNode;
-                }
-            } else if(rightNode.left == null) {
-                AST temp = new AST();
-                temp.value = mainValue;
-                rightNode.left = temp;
-            } 
-            else if(rightNode.right == null) {
-                AST temp = new AST();
-                temp.value = mainValue;
-                rightNode.right = temp;
+            else {
+                String[] variable = resolve(mainValue);
+                node.value = "VARREF " + variable[0] + " " + variable[1];
             }
-            astTrees.push(root);
+            labelRegisterNeed(node);
+            expressions.push(node);
+        }
+
+        /*  Call node "CALL name returnType argumentCount". The arguments hang
+         *  off a chain of ARG nodes, so the post-order walk evaluates them from
+         *  left to right before the call.
+         */
+        @Override public void exitCall_expr(LittleParser.Call_exprContext ctx) {
+            FunctionSymbol function = functions.get(ctx.id().getText());
+            if(function == null) {
+                throw new CompileError("UNDEFINED FUNCTION " + ctx.id().getText());
+            }
+            int count = 0;
+            if(ctx.expr_list().expr() != null) {
+                count++;
+                for(LittleParser.Expr_list_tailContext tail = ctx.expr_list().expr_list_tail(); tail.expr() != null;
+                        tail = tail.expr_list_tail()) {
+                    count++;
+                }
+            }
+            AST arguments = null;
+            for(int i = 0; i < count; i++) {
+                AST argument = new AST();
+                argument.value = "ARG";
+                argument.left = expressions.pop();
+                argument.right = arguments;
+                arguments = argument;
+            }
+            AST node = new AST();
+            node.value = "CALL " + function.getName() + " " + function.getType() + " " + count;
+            node.left = arguments;
+            labelRegisterNeed(node);
+            expressions.push(node);
+        }
+
+        // Return node, the value goes to the return slot of the frame
+        @Override public void exitReturn_stmt(LittleParser.Return_stmtContext ctx) {
+            AST node = new AST();
+            node.value = "RETURN " + currentFunction.getType();
+            node.left = expressions.pop();
+            astTrees.push(node);
+        }
+
+        /*  A while loop is lowered to
+         *      LABEL top; branch to end if the condition is false; body; JUMP top; LABEL end
+         *  The marker nodes for the labels and the jump go between the
+         *  statement trees.
+         */
+        @Override public void enterWhile_stmt(LittleParser.While_stmtContext ctx) {
+            String[] labels = {generateLabel(), generateLabel()};
+            statementLabels.push(labels);
+            localScopes.push(new HashMap<>());
+            astTrees.push(markerNode("LABEL " + labels[0]));
+        }
+
+        @Override public void exitWhile_stmt(LittleParser.While_stmtContext ctx) {
+            localScopes.pop();
+            String[] labels = statementLabels.pop();
+            astTrees.push(markerNode("JUMP " + labels[0]));
+            astTrees.push(markerNode("LABEL " + labels[1]));
+        }
+
+        /*  An if statement is lowered to
+         *      branch to else if the condition is false; then part; JUMP end; LABEL else; else part; LABEL end
+         *  Without an else part the branch goes straight past the then part.
+         */
+        @Override public void enterIf_stmt(LittleParser.If_stmtContext ctx) {
+            statementLabels.push(new String[] {null, generateLabel()});
+            localScopes.push(new HashMap<>());
+        }
+
+        @Override public void enterElse_part(LittleParser.Else_partContext ctx) {
+            if(ctx.decl() == null) {
+                return;
+            }
+            localScopes.pop();
+            localScopes.push(new HashMap<>());
+            String[] labels = statementLabels.peek();
+            labels[0] = generateLabel();
+            astTrees.push(markerNode("JUMP " + labels[0]));
+            astTrees.push(markerNode("LABEL " + labels[1]));
+        }
+
+        @Override public void exitIf_stmt(LittleParser.If_stmtContext ctx) {
+            localScopes.pop();
+            String[] labels = statementLabels.pop();
+            astTrees.push(markerNode("LABEL " + (labels[0] != null ? labels[0] : labels[1])));
+        }
+
+        /*  Condition node, it branches when the condition is false so the code
+         *  for a true condition follows without a jump. The branch compares the
+         *  operands directly, no boolean value is ever computed.
+         */
+        @Override public void exitCond(LittleParser.CondContext ctx) {
+            AST node = new AST();
+            node.right = expressions.pop();
+            node.left = expressions.pop();
+            node.value = "COND " + ctx.compop().getText() + " " + statementLabels.peek()[1];
+            astTrees.push(node);
+        }
+
+        // Method to create an AST node for a label or jump
+        AST markerNode(String value) {
+            AST node = new AST();
+            node.value = value;
+            return node;
         }
 
         // AST node for read statement
 	    @Override public void enterRead_stmt(LittleParser.Read_stmtContext ctx) {
 		AST root = new AST();
-		root.value = "READ " + (ctx.id_list().getText());
+		root.value = "READ " + resolveList(ctx.id_list().getText());
 		astTrees.push(root);
 	    }
 
         // AST node for write statement
 	    @Override public void enterWrite_stmt(LittleParser.Write_stmtContext ctx) {
 		AST root = new AST();
-		root.value = "WRITE " + (ctx.id_list().getText());
+		root.value = "WRITE " + resolveList(ctx.id_list().getText());
 		astTrees.push(root);
 	    }
 
@@ -482,7 +872,7 @@ public class Driver {
         public void printAST() {
             for(AST tree: astTrees) {
                 ArrayList<String> output = postOrderTraversal(tree);
-                System.out.println(output);
+                out.println(output);
             }
         }
 
@@ -524,9 +914,10 @@ public class Driver {
         // IR code generator
         public void IRCodeGenerator() {
             AST prev = null;
-		irRepCode.push(new CodeObject(";IR code\n;LABEL main\n;LINK", "", ""));
+		irRepCode.push(new CodeObject(";IR code", "", ""));
             for(AST tree: astTrees) {
                 Stack<AST> stack2 = new Stack<AST>();
+                prev = null;
                 if(tree == null) {
                     return;
                 }
@@ -542,7 +933,7 @@ public class Driver {
                         }
                         else {
                             stack2.pop();
-                            IRCodeConvert(current.value);
+                            IRCodeConvert(current);
                         }
                     }
                     else if(current.left == prev) {
@@ -551,24 +942,82 @@ public class Driver {
                         }
                         else {
                             stack2.pop();
-                            IRCodeConvert(current.value);
+                            IRCodeConvert(current);
                         }
                     }
                     else if(current.right == prev) {
                         stack2.pop();
-                        IRCodeConvert(current.value);
+                        IRCodeConvert(current);
                     }
                     prev = current;
                 }
             }
-            irRepCode.push(new CodeObject("\n;RET\n;tiny code\n", "", ""));
+            irRepCode.push(new CodeObject("\n;tiny code\n", "", ""));
+            if(optimize) {
+                optimizeIR();
+            }
             for(CodeObject object: irRepCode) {
-                System.out.print(object.toString());
+                out.print(object.toString());
             }
         }
 
+        /*  Replacing the statement IR with its optimized version. Functions
+         *  are optimized one at a time, and new temporaries are numbered after
+         *  the ones of every function so far.
+         */
+        public void optimizeIR() {
+            ArrayList<ArrayList<IRInstruction>> bodies = splitFunctions(irInstructions());
+            StringBuilder code = new StringBuilder();
+            for(ArrayList<IRInstruction> body: bodies) {
+                if(bodies.size() > 1) {
+                    err.println("Function " + body.get(0).target());
+                }
+                ArrayList<IRInstruction> optimized = SSAOptimizer.optimize(body, err);
+                optimized = LoopOptimizer.optimize(optimized, tempIRNumber, err);
+                optimized = BranchOptimizer.optimize(optimized, tempIRNumber, err);
+                for(IRInstruction instruction: optimized) {
+                    for(String operand: instruction.operands) {
+                        if(IRInstruction.isTemp(operand)) {
+                            tempIRNumber = Math.max(tempIRNumber, Integer.parseInt(operand.substring(2)));
+                        }
+                    }
+                    code.append("\n").append(instruction);
+                }
+            }
+            CodeObject header = irRepCode.firstElement();
+            CodeObject footer = irRepCode.lastElement();
+            irRepCode.clear();
+            irRepCode.push(header);
+            irRepCode.push(new CodeObject(code.toString(), "", ""));
+            irRepCode.push(footer);
+        }
+
+        // Splitting IR code at the start of every function, which is its label followed by LINK
+        public static ArrayList<ArrayList<IRInstruction>> splitFunctions(List<IRInstruction> code) {
+            ArrayList<ArrayList<IRInstruction>> bodies = new ArrayList<>();
+            for(int i = 0; i < code.size(); i++) {
+                if(bodies.isEmpty() || (code.get(i).isLabel() && i + 1 < code.size() && code.get(i + 1).getOpcode().equals("LINK"))) {
+                    bodies.add(new ArrayList<>());
+                }
+                bodies.get(bodies.size() - 1).add(code.get(i));
+            }
+            return bodies;
+        }
+
+        // Type of an arithmetic expression, constants take the type of the other operand
+        public static String expressionType(CodeObject leftSide, CodeObject rightSide) {
+            if(!leftSide.getType().equals("CONSTANT")) {
+                return leftSide.getType();
+            }
+            if(!rightSide.getType().equals("CONSTANT")) {
+                return rightSide.getType();
+            }
+            return leftSide.getTemp().contains(".") ? "FLOAT" : "INT";
+        }
+
         // Converting IR code to Assembly
-        public void IRCodeConvert(String stringInput) {
+        public void IRCodeConvert(AST node) {
+            String stringInput = node.value;
             String[] array1 = stringInput.split(" ");
             String code = "";
             String temp = "";
@@ -587,9 +1036,9 @@ public class Driver {
                     rightSide = irRepCode.pop();
                     leftSide = irRepCode.pop();
                     temp = generateTemp();
-                    type = rightSide.getType();
-                    code = leftSide.getCode();
-                    code += rightSide.getCode();
+                    type = expressionType(leftSide, rightSide);
+                    code = evaluateRightFirst(node) ? rightSide.getCode() + leftSide.getCode()
+                            : leftSide.getCode() + rightSide.getCode();
     
                     if(leftSide.getType().equals("CONSTANT")){
                         code += "\n;STORE" + type.charAt(0) + " " +  leftSide.getTemp() + " " + temp;
@@ -615,9 +1064,9 @@ public class Driver {
                     rightSide = irRepCode.pop();
                     leftSide = irRepCode.pop();
                     temp = generateTemp();
-                    type = leftSide.getType();
-                    code = leftSide.getCode();
-                    code += rightSide.getCode();
+                    type = expressionType(leftSide, rightSide);
+                    code = evaluateRightFirst(node) ? rightSide.getCode() + leftSide.getCode()
+                            : leftSide.getCode() + rightSide.getCode();
     
                     if(leftSide.getType().equals("CONSTANT")){
                         code += "\n;STORE" + type.charAt(0) + " " +  leftSide.getTemp() + " " + temp;
@@ -680,11 +1129,39 @@ public class Driver {
                     irRepCode.push(simpleAssignEquation);
                     break;
 
+                case "COND":
+                    rightSide = irRepCode.pop();
+                    leftSide = irRepCode.pop();
+                    type = expressionType(leftSide, rightSide);
+                    code = evaluateRightFirst(node) ? rightSide.getCode() + leftSide.getCode()
+                            : leftSide.getCode() + rightSide.getCode();
+
+                    if(leftSide.getType().equals("CONSTANT")) {
+                        temp = generateTemp();
+                        code += "\n;STORE" + type.charAt(0) + " " + leftSide.getTemp() + " " + temp;
+                        leftSide.temp = temp;
+                    }
+                    if(rightSide.getType().equals("CONSTANT")) {
+                        temp = generateTemp();
+                        code += "\n;STORE" + type.charAt(0) + " " + rightSide.getTemp() + " " + temp;
+                        rightSide.temp = temp;
+                    }
+                    code += "\n;" + falseBranch(array1[1]) + type.charAt(0) + " " + leftSide.getTemp() + " " +
+                            rightSide.getTemp() + " " + array1[2];
+                    irRepCode.push(new CodeObject(code, "", ""));
+                    break;
+
+                case "LABEL":
+                case "JUMP":
+                    irRepCode.push(new CodeObject("\n;" + stringInput, "", ""));
+                    break;
+
                 case "READ":
                     allVariables = array1[1].split(",");
                     code = "";
                     for(String readVar: allVariables){
-                        code += "\n;READ" + variableType.get(readVar).charAt(0) + " " + readVar;
+                        String[] readOperand = readVar.split(":");
+                        code += "\n;READ" + readOperand[1].charAt(0) + " " + readOperand[0];
                     }
                     CodeObject readObj = new CodeObject(code, "", "");
                     irRepCode.push(readObj);
@@ -694,170 +1171,413 @@ public class Driver {
                     allVariables = array1[1].split(",");
                     code = "";
                     for(String writeVar: allVariables) {
-                        code += "\n;WRITE" + variableType.get(writeVar).charAt(0) + " " + writeVar;
+                        String[] writeOperand = writeVar.split(":");
+                        code += "\n;WRITE" + writeOperand[1].charAt(0) + " " + writeOperand[0];
                     }
                     CodeObject writeObj = new CodeObject(code, "", "");
                     irRepCode.push(writeObj);
                     break;
+
+                case "FUNCTION":
+                    irRepCode.push(new CodeObject("\n;LABEL " + array1[1] + "\n;LINK", "", ""));
+                    break;
+
+                case "ENDFUNCTION":
+                    irRepCode.push(new CodeObject("\n;RET", "", ""));
+                    break;
+
+                // The argument values stay on the stack for the call
+                case "ARG":
+                    break;
+
+                /*  A call pushes a slot for the return value and then the
+                 *  arguments, and afterwards pops the arguments and the result.
+                 */
+                case "CALL":
+                    FunctionSymbol function = functions.get(array1[1]);
+                    CodeObject[] arguments = new CodeObject[Integer.parseInt(array1[3])];
+                    for(int i = arguments.length - 1; i >= 0; i--) {
+                        arguments[i] = irRepCode.pop();
+                    }
+                    code = "";
+                    String pushes = "\n;PUSH";
+                    for(int i = 0; i < arguments.length; i++) {
+                        code += arguments[i].getCode();
+                        String argument = arguments[i].getTemp();
+                        if(arguments[i].getType().equals("CONSTANT")) {
+                            temp = generateTemp();
+                            code += "\n;STORE" + function.parameterTypes.get(i).charAt(0) + " " + argument + " " + temp;
+                            argument = temp;
+                        }
+                        pushes += "\n;PUSH " + argument;
+                    }
+                    code += pushes + "\n;JSR " + array1[1];
+                    for(int i = 0; i < arguments.length; i++) {
+                        code += "\n;POP";
+                    }
+                    temp = generateTemp();
+                    code += "\n;POP " + temp;
+                    irRepCode.push(new CodeObject(code, temp, array1[2]));
+                    break;
+
+                case "RETURN":
+                    rightSide = irRepCode.pop();
+                    code = rightSide.getCode();
+                    if(!array1[1].equals("VOID")) {
+                        String value = rightSide.getTemp();
+                        if(rightSide.getType().equals("CONSTANT")) {
+                            value = generateTemp();
+                            code += "\n;STORE" + array1[1].charAt(0) + " " + rightSide.getTemp() + " " + value;
+                        }
+                        code += "\n;STORE" + array1[1].charAt(0) + " " + value + " $R";
+                    }
+                    code += "\n;RET";
+                    irRepCode.push(new CodeObject(code, "", ""));
+                    break;
             }
         }
         
+        // Branch opcode taken when a comparison is false
+        public static String falseBranch(String compop) {
+            switch(compop) {
+                case "<": return "GE";
+                case ">": return "LE";
+                case "=": return "NE";
+                case "!=": return "EQ";
+                case "<=": return "GT";
+                case ">=": return "LT";
+            }
+            return null;
+        }
+
+        // Collecting the IR code of the statements as instructions
+        public ArrayList<IRInstruction> irInstructions() {
+            ArrayList<IRInstruction> code = new ArrayList<>();
+            // The first and last code objects hold the IR header and footer
+            for(int i = 1; i < irRepCode.size() - 1; i++) {
+                for(String line: irRepCode.get(i).toString().split("\n")) {
+                    IRInstruction instruction = IRInstruction.parse(line);
+                    if(instruction != null) {
+                        code.add(instruction);
+                    }
+                }
+            }
+            return code;
+        }
+
         // Formatting tiny code
         public void tinyCodeFormatting() {
+            // Block counters are globals of this unit, and only its own startup code prints them
+            if(instrument && (objectFileName != null || !libraries.isEmpty())) {
+                throw new CompileError("OPTION ERROR --instrument cannot be combined with --object or --link");
+            }
             tempIRNumber = -1;
+            ControlFlowGraph graph = ControlFlowGraph.build(irInstructions());
+            HashMap<Integer, Long> counts = new HashMap<>();
+            // Block ids only mean the same blocks in a compile of the same IR
+            String fingerprint = ProfileData.fingerprint(graph, optimize);
+            if(profile != null && !fingerprint.equals(profile.getFingerprint())) {
+                String recorded = profile.getFingerprint() != null ? profile.getFingerprint() : "no fingerprint";
+                err.println("Profile ignored: it was recorded from " + recorded + ", this compile has " + fingerprint);
+                profile = null;
+            }
+            if(profile != null) {
+                counts = profile.getCounts();
+                graph.layoutByFrequency(counts);
+            }
+            ArrayList<ArrayList<String>> tinyBlocks = generateTiny(graph, counts);
+
+            ObjectFile object = objectFile(graph, tinyBlocks);
+            if(objectFileName != null) {
+                try {
+                    object.write(objectFileName);
+                }
+                catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            else {
+                ArrayList<ObjectFile> units = new ArrayList<>();
+                units.add(object);
+                units.addAll(libraries);
+                tinyCode.addAll(TinyLinker.link(units));
+            }
+
+            for(String string3: tinyCode) {
+                out.println(string3);
+            }
+
+            if(profile != null) {
+                printProfileReport(graph, tinyBlocks);
+            }
+        }
+
+        /*  Packing the Tiny code of the program with its interface. The
+         *  startup code calls main and halts, and instrumented code writes out
+         *  the profile before halting.
+         */
+        public ObjectFile objectFile(ControlFlowGraph graph, ArrayList<ArrayList<String>> tinyBlocks) {
+            ObjectFile object = new ObjectFile();
+            object.exports.addAll(definedFunctions);
+            for(FunctionSymbol function: functions.values()) {
+                if(!definedFunctions.contains(function)) {
+                    object.externs.add(function);
+                }
+            }
             for(int i = 0; i < variableCount; i++){
-                String tinyType = variableType.get(variableOrder.get(i));
-                if (tinyType.equals("INT") || tinyType.equals("FLOAT")){
-                    tinyCode.push("var "+ variableOrder.get(i));
-                } 
-                else if(tinyType.equals("STRING")) {
-                    String tinyStringValue = variableType.get(variableOrder.get(i));
-                    tinyCode.push("str " + variableOrder.get(i) + " " + variableType.get(variableOrder.get(i)));
+                String name = variableOrder.get(i);
+                object.globals.add(new SymbolTableElement(name, variableType.get(name), stringValue.get(name)));
+            }
+            if(instrument) {
+                String fingerprint = ProfileData.fingerprint(graph, optimize);
+                object.globals.add(new SymbolTableElement("prof_build", "STRING", "\" PROFILED " + fingerprint + "\""));
+                // The last count is followed by a space as well, so the output of the next run can be appended
+                object.globals.add(new SymbolTableElement("prof_end", "STRING", "\" \""));
+                for(BasicBlock block: graph.blocks) {
+                    object.globals.add(new SymbolTableElement("count_" + block.getId(), "INT"));
+                    // Tiny writes integers without a separator, so every pair starts with a space
+                    object.globals.add(new SymbolTableElement("prof_" + block.getId(), "STRING", "\" PROFILE " + block.getId() + " \""));
                 }
             }
-            
-            for(CodeObject object: irRepCode) {
-                String[] temp = object.toString().split("\n");
-                for(String string2: temp){
-                    ConvertIRToTinyCode(string2);
+
+            if(functions.containsKey("main") && definedFunctions.contains(functions.get("main"))) {
+                object.startup.add("push");
+                object.startup.add("jsr main");
+                if(instrument) {
+                    object.startup.add("sys writes prof_build");
+                    for(BasicBlock block: graph.blocks) {
+                        object.startup.add("sys writes prof_" + block.getId());
+                        object.startup.add("sys writei count_" + block.getId());
+                    }
+                    object.startup.add("sys writes prof_end");
+                }
+                object.startup.add("sys halt");
+            }
+
+            for(int i = 0; i < tinyBlocks.size(); i++) {
+                BasicBlock block = graph.layout.get(i);
+                ArrayList<String> lines = tinyBlocks.get(i);
+                // Counting the block right after its label
+                int counterIndex = !lines.isEmpty() && lines.get(0).startsWith("label") ? 1 : 0;
+                for(int j = 0; j < lines.size(); j++) {
+                    if(instrument && j == counterIndex) {
+                        addCounter(block, object.code);
+                    }
+                    object.code.add(lines.get(j));
+                }
+                if(instrument && lines.size() <= counterIndex) {
+                    addCounter(block, object.code);
                 }
             }
+            return object;
+        }
 
-            tinyCode.push("sys halt");
+        // Method to add the counter increment for a block
+        void addCounter(BasicBlock block, ArrayList<String> tiny) {
+            tiny.add("move count_" + block.getId() + " " + registers.getScratch());
+            tiny.add("inci " + registers.getScratch());
+            tiny.add("move " + registers.getScratch() + " count_" + block.getId());
+        }
 
-            for(String string3: tinyCode) {
-                System.out.println(string3);
+        /*  Allocating registers and converting the IR of every block to Tiny.
+         *  Returns the Tiny code of each block in layout order.
+         */
+        public ArrayList<ArrayList<String>> generateTiny(ControlFlowGraph graph, Map<Integer, Long> counts) {
+            ArrayList<ArrayList<IRInstruction>> irBlocks = graph.linearizeBlocks();
+            ArrayList<IRInstruction> code = new ArrayList<>();
+            ArrayList<Long> weights = new ArrayList<>();
+            for(int i = 0; i < irBlocks.size(); i++) {
+                long weight = counts.isEmpty() ? 1 : ControlFlowGraph.count(counts, graph.layout.get(i));
+                for(IRInstruction instruction: irBlocks.get(i)) {
+                    code.add(instruction);
+                    weights.add(weight);
+                }
+            }
+            registers = new RegisterAllocator(registerCount);
+            registers.allocate(code, weights);
+
+            // The blocks of a function follow its entry block, which holds its label and LINK
+            HashMap<BasicBlock, StackFrame> frames = new HashMap<>();
+            StackFrame function = null;
+            for(BasicBlock block: graph.blocks) {
+                for(int i = 1; i < block.instructions.size(); i++) {
+                    if(block.instructions.get(i).getOpcode().equals("LINK")) {
+                        String name = block.instructions.get(i - 1).target();
+                        function = new StackFrame(name, functions.get(name).parameterTypes.size());
+                    }
+                }
+                frames.put(block, function);
+            }
+            for(int i = 0; i < irBlocks.size(); i++) {
+                StackFrame blockFrame = frames.get(graph.layout.get(i));
+                if(blockFrame == null) {
+                    continue;
+                }
+                for(IRInstruction instruction: irBlocks.get(i)) {
+                    for(String operand: instruction.operands) {
+                        blockFrame.reserve(operand, registers);
+                    }
+                }
+            }
+
+            ArrayList<ArrayList<String>> tinyBlocks = new ArrayList<>();
+            linearCode = code;
+            instructionIndex = 0;
+            for(int i = 0; i < irBlocks.size(); i++) {
+                ArrayList<IRInstruction> irBlock = irBlocks.get(i);
+                frame = frames.get(graph.layout.get(i));
+                ArrayList<String> tinyBlock = new ArrayList<>();
+                for(IRInstruction instruction: irBlock) {
+                    ConvertIRToTinyCode(instruction, tinyBlock);
+                    instructionIndex++;
+                }
+                tinyBlocks.add(tinyBlock);
             }
+            return tinyBlocks;
+        }
+
+        // Comparing the estimated cycles of the profile guided code with the plain code
+        public void printProfileReport(ControlFlowGraph graph, ArrayList<ArrayList<String>> tinyBlocks) {
+            RegisterAllocator profiledRegisters = registers;
+            ControlFlowGraph plainGraph = ControlFlowGraph.build(irInstructions());
+            long plain = profile.estimateCycles(plainGraph, generateTiny(plainGraph, new HashMap<>()));
+            long guided = profile.estimateCycles(graph, tinyBlocks);
+            registers = profiledRegisters;
+
+            int coldBlocks = 0;
+            for(BasicBlock block: graph.blocks) {
+                if(profile.count(block) == 0) {
+                    coldBlocks++;
+                }
+            }
+            err.println("Profile guided compile: " + graph.blocks.size() + " blocks, " + coldBlocks + " never executed");
+            err.println("Estimated cycles without profile " + plain + ", with profile " + guided +
+                    ", saved " + (plain - guided));
         }
 
         // Converting IR to Tiny code
-        public void ConvertIRToTinyCode(String string4) {
-            String[] array2 = string4.split(" ");
-            String operation1;
-            String operation2;
-            String register;
-		    if(array2[0].startsWith(";STORE")) {
-			    if(array2[1].startsWith("$T")) {
-				    operation1 = "r"+array2[1].replace("$T", "");
-			    } 
-                else {
-				operation1 = array2[1];
-			}
-
-			if(array2[2].startsWith("$T")){
-				operation2 = "r"+ array2[2].replace("$T", "");
-			} 
-            else {
-				operation2 = array2[2];
-			}
-			tinyCode.push("move " + operation1 + " " + operation2);
-		}
-		else if(array2[0].equals(";READI")){
-			tinyCode.push( "sys readi " + array2[1]);
-		}
-		else if(array2[0].equals(";READF")) {
-			tinyCode.push( "sys readr " + array2[1]);
-		}
-		else if(array2[0].equals(";WRITEI")) {
-			tinyCode.push( "sys writei " + array2[1]);
-		}
-		else if(array2[0].equals(";WRITEF")) {
-			tinyCode.push( "sys writer " + array2[1]);
-		}
-		else if(array2[0].equals(";WRITES")) {
-			tinyCode.push( "sys writes " + array2[1]);
-		}
-		else if(array2[0].equals(";MULTI")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r"+ array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("muli " + array2[2] + register);
-		}
-		else if(array2[0].equals(";MULTF")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("mulr " + array2[2] + register);
-		}
-		else if(array2[0].equals(";DIVI")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("divi " + array2[2] + register);
-		}
-		else if(array2[0].equals(";DIVF")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("divr " + array2[2] + register);
-		}
-		else if(array2[0].equals(";ADDI")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("addi " + array2[2] + register);
-		}
-		else if(array2[0].equals(";ADDF")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("addr " + array2[2] + register);
-		}
-		else if(array2[0].equals(";SUBI")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("subi " + array2[2] + register);
-		}
-		else if(array2[0].equals(";SUBF")){
-			register = " r" + array2[3].replace("$T", "");
-			if(array2[1].startsWith("$T")){
-				array2[1] = "r" + array2[1].replace("$T", "");
-			}
-			if(array2[2].startsWith("$T")){
-				array2[2] = "r" + array2[2].replace("$T", "");
-			}
-			tinyCode.push("move " + array2[1] + register );
-			tinyCode.push("subr " + array2[2] + register);
-		    }
-	    }
+        public void ConvertIRToTinyCode(IRInstruction instruction, ArrayList<String> tiny) {
+            String opcode = instruction.getOpcode();
+            String scratch = registers.getScratch();
+            if(opcode.startsWith("STORE")) {
+                String source = tinyOperand(instruction.getOperand(0));
+                String target = tinyOperand(instruction.getOperand(1));
+                // Tiny cannot move from memory to memory
+                if(!RegisterAllocator.isRegister(source) && !IRInstruction.isConstant(source)
+                        && !RegisterAllocator.isRegister(target)) {
+                    tiny.add("move " + source + " " + scratch);
+                    source = scratch;
+                }
+                // A temporary copied into the register it dies in needs no move
+                if(!source.equals(target)) {
+                    tiny.add("move " + source + " " + target);
+                }
+            }
+            else if(opcode.equals("READI")) {
+                tiny.add("sys readi " + tinyOperand(instruction.getOperand(0)));
+            }
+            else if(opcode.equals("READF")) {
+                tiny.add("sys readr " + tinyOperand(instruction.getOperand(0)));
+            }
+            else if(opcode.equals("WRITEI")) {
+                tiny.add("sys writei " + tinyOperand(instruction.getOperand(0)));
+            }
+            else if(opcode.equals("WRITEF")) {
+                tiny.add("sys writer " + tinyOperand(instruction.getOperand(0)));
+            }
+            else if(opcode.equals("WRITES")) {
+                tiny.add("sys writes " + instruction.getOperand(0));
+            }
+            else if(tinyArithmetic(opcode) != null) {
+                String left = tinyOperand(instruction.getOperand(0));
+                String right = tinyOperand(instruction.getOperand(1));
+                String target = tinyOperand(instruction.getOperand(2));
+                String register = RegisterAllocator.isRegister(target) ? target : scratch;
+                if(!left.equals(register)) {
+                    tiny.add("move " + left + " " + register);
+                }
+                tiny.add(tinyArithmetic(opcode) + " " + right + " " + register);
+                if(!register.equals(target)) {
+                    tiny.add("move " + register + " " + target);
+                }
+            }
+            else if(opcode.equals("PUSH") && instruction.operands.length == 0) {
+                // The push of the return slot starts a call, registers needed after the call are saved first
+                int call = instructionIndex;
+                while(!linearCode.get(call).getOpcode().equals("JSR")) {
+                    call++;
+                }
+                callSaves = registers.liveAcross(call);
+                for(String register: callSaves) {
+                    tiny.add("push " + register);
+                }
+                tiny.add("push");
+            }
+            else if(opcode.equals("POP") && instruction.operands.length > 0) {
+                // Popping the result ends a call
+                tiny.add("pop " + tinyOperand(instruction.getOperand(0)));
+                for(int i = callSaves.size() - 1; i >= 0; i--) {
+                    tiny.add("pop " + callSaves.get(i));
+                }
+            }
+            else if(opcode.equals("PUSH") || opcode.equals("POP")) {
+                tiny.add(opcode.toLowerCase() + (instruction.operands.length > 0 ? " " + tinyOperand(instruction.getOperand(0)) : ""));
+            }
+            else if(opcode.equals("JSR")) {
+                tiny.add("jsr " + instruction.target());
+            }
+            else if(opcode.equals("LINK")) {
+                tiny.add("link " + frame.size());
+            }
+            else if(opcode.equals("RET")) {
+                tiny.add("unlnk");
+                tiny.add("ret");
+            }
+            else if(opcode.equals("LABEL")) {
+                tiny.add("label " + instruction.target());
+            }
+            else if(opcode.equals("JUMP")) {
+                tiny.add("jmp " + instruction.target());
+            }
+            else if(instruction.isBranch()) {
+                // Tiny compares an operand against a register
+                String left = tinyOperand(instruction.getOperand(0));
+                String right = tinyOperand(instruction.getOperand(1));
+                if(!RegisterAllocator.isRegister(right)) {
+                    tiny.add("move " + right + " " + scratch);
+                    right = scratch;
+                }
+                tiny.add((opcode.endsWith("F") ? "cmpr " : "cmpi ") + left + " " + right);
+                tiny.add("j" + opcode.substring(0, 2).toLowerCase() + " " + instruction.target());
+            }
+        }
+
+        // Tiny operand for an IR operand of the function being converted
+        String tinyOperand(String operand) {
+            return frame != null ? frame.operand(operand, registers) : registers.operand(operand);
+        }
+
+        // Tiny opcode for an IR arithmetic opcode, or null if it is not arithmetic
+        public static String tinyArithmetic(String opcode) {
+            switch(opcode) {
+                case "ADDI": return "addi";
+                case "ADDF": return "addr";
+                case "SUBI": return "subi";
+                case "SUBF": return "subr";
+                case "MULTI": return "muli";
+                case "MULTF": return "mulr";
+                case "DIVI": return "divi";
+                case "DIVF": return "divr";
+            }
+            return null;
+        }
         
+        // Generates a label for the IR code, Little identifiers have no underscore so it cannot clash with a function name
+        public String generateLabel() {
+            labelNumber++;
+            return "label_" + labelNumber;
+        }
+
         /*Generates temp for IR Code representation*/
 	    public String generateTemp(){
 		tempIRNumber++;
@@ -0,0 +1,45 @@
+// Import libraries
+import java.util.*;
+
+// Global class for a function in the symbol table, its type is the return type
+class FunctionSymbol extends SymbolTableElement {
+    ArrayList<String> parameterTypes = new ArrayList<>();
+    ArrayList<String> parameterNames = new ArrayList<>();
+
+    // Constructor
+    public FunctionSymbol(String name, String returnType) {
+        super(name, returnType);
+    }
+
+    // Function symbol for a function declaration of the parse tree
+    public static FunctionSymbol of(LittleParser.Func_declContext ctx) {
+        FunctionSymbol function = new FunctionSymbol(ctx.id().getText(), ctx.any_type().getText());
+        LittleParser.Param_declContext parameter = ctx.param_decl_list().param_decl();
+        LittleParser.Param_decl_tailContext tail = ctx.param_decl_list().param_decl_tail();
+        while(parameter != null) {
+            function.parameterTypes.add(parameter.var_type().getText());
+            function.parameterNames.add(parameter.id().getText());
+            parameter = tail.param_decl();
+            tail = tail.param_decl_tail();
+        }
+        return function;
+    }
+
+    // Checking whether two symbols describe the same function interface
+    public boolean sameSignature(FunctionSymbol other) {
+        return type.equals(other.type) && parameterTypes.equals(other.parameterTypes);
+    }
+
+    // Interface line for the object file, "function name returnType parameterTypes..."
+    public String interfaceLine() {
+        StringBuilder line = new StringBuilder("function " + name + " " + type);
+        for(String parameterType: parameterTypes) {
+            line.append(" ").append(parameterType);
+        }
+        return line.toString();
+    }
+
+    @Override public String toString() {
+        return ("name " + this.name + " type " + this.type + " parameters " + this.parameterTypes + "\n");
+    }
+}
@@ -0,0 +1,168 @@
+// Import libraries
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Global class for a single IR instruction such as ";ADDI a $T1 $T2"
+class IRInstruction {
+    static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?|-?\\d*\\.\\d+");
+
+    String opcode;
+    String[] operands;
+
+    // Constructor
+    public IRInstruction(String opcode, String... operands) {
+        this.opcode = opcode;
+        this.operands = operands;
+    }
+
+    // Parsing one line of IR code, returns null for blank lines
+    public static IRInstruction parse(String line) {
+        String trimmed = line.trim();
+        if(trimmed.startsWith(";")) {
+            trimmed = trimmed.substring(1);
+        }
+        if(trimmed.isEmpty()) {
+            return null;
+        }
+        String[] parts = trimmed.split(" ");
+        return new IRInstruction(parts[0], Arrays.copyOfRange(parts, 1, parts.length));
+    }
+
+    // IR instruction getters
+    public String getOpcode() { return this.opcode; }
+    public String getOperand(int i) { return this.operands[i]; }
+
+    public boolean isLabel() {
+        return opcode.equals("LABEL");
+    }
+
+    public boolean isJump() {
+        return opcode.equals("JUMP");
+    }
+
+    // Conditional branches compare two operands and jump to the label in the last operand
+    public boolean isBranch() {
+        return isBranchOpcode(opcode);
+    }
+
+    public boolean isTerminator() {
+        return isJump() || isBranch() || opcode.equals("RET");
+    }
+
+    // Branch opcodes are a comparison followed by the operand type, for example GEI or LTF
+    public static boolean isBranchOpcode(String opcode) {
+        if(opcode.length() != 3 || (opcode.charAt(2) != 'I' && opcode.charAt(2) != 'F')) {
+            return false;
+        }
+        switch(opcode.substring(0, 2)) {
+            case "GT": case "GE": case "LT": case "LE": case "EQ": case "NE":
+                return true;
+        }
+        return false;
+    }
+
+    // Label operand of a LABEL, JUMP or branch
+    public String target() {
+        return operands[operands.length - 1];
+    }
+
+    // Instructions that read all operands but the last one and write the last one
+    boolean writesLastOperand() {
+        return opcode.startsWith("STORE") || opcode.startsWith("ADD") || opcode.startsWith("SUB")
+                || opcode.startsWith("MULT") || opcode.startsWith("DIV") || opcode.equals("PHI");
+    }
+
+    // Index of the operand written by the instruction, or -1 if it writes nothing
+    public int destIndex() {
+        if(writesLastOperand()) {
+            return operands.length - 1;
+        }
+        if(opcode.startsWith("READ") || (opcode.equals("POP") && operands.length > 0)) {
+            return 0;
+        }
+        return -1;
+    }
+
+    // Indexes of the operands read by the instruction
+    public int[] useIndexes() {
+        if(writesLastOperand()) {
+            int[] indexes = new int[operands.length - 1];
+            for(int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            return indexes;
+        }
+        if(opcode.startsWith("WRITE") || (opcode.equals("PUSH") && operands.length > 0)) {
+            return new int[] {0};
+        }
+        if(isBranch()) {
+            return new int[] {0, 1};
+        }
+        return new int[0];
+    }
+
+    // Operand written by the instruction, or null if it writes nothing
+    public String dest() {
+        int index = destIndex();
+        return index >= 0 ? operands[index] : null;
+    }
+
+    // Operands read by the instruction
+    public List<String> uses() {
+        ArrayList<String> uses = new ArrayList<>();
+        for(int index: useIndexes()) {
+            uses.add(operands[index]);
+        }
+        return uses;
+    }
+
+    // Copy with its own operand array
+    public IRInstruction copy() {
+        return new IRInstruction(opcode, operands.clone());
+    }
+
+    // Comparison that jumps exactly when this one falls through
+    public static String invertBranch(String opcode) {
+        String type = opcode.substring(2);
+        switch(opcode.substring(0, 2)) {
+            case "GT": return "LE" + type;
+            case "GE": return "LT" + type;
+            case "LT": return "GE" + type;
+            case "LE": return "GT" + type;
+            case "EQ": return "NE" + type;
+            case "NE": return "EQ" + type;
+        }
+        return opcode;
+    }
+
+    // Checking whether an operand names an IR temporary
+    public static boolean isTemp(String operand) {
+        return operand.startsWith("$T");
+    }
+
+    // Checking whether an operand names a global variable, which a called function can change
+    public static boolean isGlobal(String operand) {
+        return !operand.startsWith("$") && !isConstant(operand);
+    }
+
+    // Checking whether an operand is a numeric literal
+    public static boolean isConstant(String operand) {
+        if(operand.isEmpty()) {
+            return false;
+        }
+        // Names start with a letter or $, so most operands are settled by their first character
+        char first = operand.charAt(0);
+        if(first != '-' && first != '.' && !Character.isDigit(first)) {
+            return false;
+        }
+        return NUMBER.matcher(operand).matches();
+    }
+
+    @Override public String toString() {
+        StringBuilder line = new StringBuilder(";" + opcode);
+        for(String operand: operands) {
+            line.append(" ").append(operand);
+        }
+        return line.toString();
+    }
+}
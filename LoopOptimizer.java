@@ -0,0 +1,430 @@
+// Import libraries
+import java.io.PrintStream;
+import java.util.*;
+
+/*  Global class for loop optimization of the IR code.
+ *  Loops are found from the back edges of the control flow graph, where a
+ *  back edge is an edge to a block that dominates its source. Inner loops
+ *  are optimized before the loops around them.
+ *  Loop-invariant code motion moves temporary computations whose operands
+ *  do not change inside the loop into a preheader, which is code placed
+ *  right before the loop's header label.
+ *  Strength reduction finds basic induction variables, which are user
+ *  variables whose only assignment in the loop is i := i + c or i := i - c
+ *  with a loop-invariant c. A multiplication i * k with a loop-invariant k
+ *  is replaced by a temporary that starts at i * k in the preheader and is
+ *  increased by c * k right after every update of i.
+ *  A loop that calls a function can change any global variable on every
+ *  iteration, so in such a loop no global is invariant.
+ */
+class LoopOptimizer {
+    ControlFlowGraph graph;
+    ArrayList<Loop> loops = new ArrayList<>();
+
+    // Code placed right before a loop header, it only runs when the loop is entered
+    HashMap<BasicBlock, ArrayList<IRInstruction>> preheaders = new HashMap<>();
+
+    // Number of times each operand is written and read in the whole code
+    HashMap<String, Integer> definitions = new HashMap<>();
+    HashMap<String, Integer> useCounts = new HashMap<>();
+    int tempNumber = 0;
+
+    // One natural loop, the blocks of all back edges to the same header merged
+    static class Loop {
+        BasicBlock header;
+        TreeSet<BasicBlock> body = new TreeSet<>(Comparator.comparingInt(BasicBlock::getId));
+        HashMap<String, Integer> definitions = new HashMap<>();
+        boolean calls = false;
+        int moved = 0;
+        int reduced = 0;
+
+        Loop(BasicBlock header) {
+            this.header = header;
+        }
+    }
+
+    // Basic induction variable, updated by "STOREI update.dest variable" after update
+    static class InductionVariable {
+        String variable;
+        IRInstruction update;
+        IRInstruction store;
+        ArrayList<IRInstruction> list;
+    }
+
+    // Constructor
+    public LoopOptimizer(List<IRInstruction> code) {
+        ArrayList<IRInstruction> copy = new ArrayList<>();
+        for(IRInstruction instruction: code) {
+            copy.add(instruction.copy());
+            record(copy.get(copy.size() - 1));
+            for(String operand: instruction.operands) {
+                if(IRInstruction.isTemp(operand)) {
+                    tempNumber = Math.max(tempNumber, Integer.parseInt(operand.substring(2)));
+                }
+            }
+        }
+        graph = ControlFlowGraph.build(copy);
+    }
+
+    // Running loop optimization on a list of IR instructions, the counts for each loop go to the report stream
+    public static ArrayList<IRInstruction> optimize(List<IRInstruction> code, PrintStream report) {
+        return optimize(code, 0, report);
+    }
+
+    // Same, with new temporaries numbered after the given one as well as after those in the code
+    public static ArrayList<IRInstruction> optimize(List<IRInstruction> code, int tempNumber, PrintStream report) {
+        LoopOptimizer optimizer = new LoopOptimizer(code);
+        optimizer.tempNumber = Math.max(optimizer.tempNumber, tempNumber);
+        ArrayList<IRInstruction> optimized = optimizer.run();
+        for(Loop loop: optimizer.loops) {
+            report.println("Loop " + loop.header.getLabel() + ": " + loop.body.size() + " blocks, " +
+                    loop.moved + " instructions moved to the preheader, " + loop.reduced + " multiplications strength reduced");
+        }
+        return optimized;
+    }
+
+    // Method to run the passes, innermost loops first
+    public ArrayList<IRInstruction> run() {
+        graph.computeDominators();
+        findLoops();
+        ArrayList<Loop> innerFirst = new ArrayList<>(loops);
+        innerFirst.sort(Comparator.comparingInt((Loop loop) -> loop.body.size()));
+        for(Loop loop: innerFirst) {
+            if(!hasPreheader(loop)) {
+                continue;
+            }
+            countDefinitions(loop);
+            hoistInvariants(loop);
+            reduceStrength(loop);
+        }
+
+        ArrayList<IRInstruction> code = new ArrayList<>();
+        for(BasicBlock block: graph.blocks) {
+            code.addAll(preheaders.getOrDefault(block, new ArrayList<>()));
+            code.addAll(block.instructions);
+        }
+        return code;
+    }
+
+    // Method to find the natural loops from the back edges
+    void findLoops() {
+        LinkedHashMap<BasicBlock, Loop> byHeader = new LinkedHashMap<>();
+        for(BasicBlock block: graph.blocks) {
+            if(graph.orderIndex[block.id] < 0) {
+                continue;
+            }
+            for(BasicBlock successor: block.successors) {
+                if(!graph.dominates(successor, block)) {
+                    continue;
+                }
+                Loop loop = byHeader.computeIfAbsent(successor, Loop::new);
+                loop.body.add(successor);
+                // Everything that reaches the back edge without passing the header is in the loop
+                ArrayDeque<BasicBlock> worklist = new ArrayDeque<>();
+                if(loop.body.add(block)) {
+                    worklist.add(block);
+                }
+                while(!worklist.isEmpty()) {
+                    for(BasicBlock predecessor: worklist.poll().predecessors) {
+                        if(graph.orderIndex[predecessor.id] >= 0 && loop.body.add(predecessor)) {
+                            worklist.add(predecessor);
+                        }
+                    }
+                }
+            }
+        }
+        ArrayList<Loop> found = new ArrayList<>(byHeader.values());
+        found.sort(Comparator.comparingInt((Loop loop) -> loop.header.id));
+        loops.addAll(found);
+    }
+
+    /*  Checking that code placed before the header label runs exactly when
+     *  the loop is entered, which holds when the only way in from outside is
+     *  falling through from the block before the header.
+     */
+    boolean hasPreheader(Loop loop) {
+        for(BasicBlock predecessor: loop.header.predecessors) {
+            if(loop.body.contains(predecessor)) {
+                continue;
+            }
+            IRInstruction last = predecessor.terminator();
+            if(predecessor.fallThrough != loop.header || (last != null && last.isJump())
+                    || (last != null && last.isBranch() && graph.labels.get(last.target()) == loop.header)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Method to count the writes of every operand inside a loop
+    void countDefinitions(Loop loop) {
+        loop.definitions.clear();
+        loop.calls = false;
+        for(ArrayList<IRInstruction> list: loopCode(loop)) {
+            for(IRInstruction instruction: list) {
+                if(instruction.dest() != null) {
+                    loop.definitions.merge(instruction.dest(), 1, Integer::sum);
+                }
+                loop.calls |= instruction.getOpcode().equals("JSR");
+            }
+        }
+    }
+
+    // Instruction lists of a loop, including the preheaders of the loops nested in it
+    ArrayList<ArrayList<IRInstruction>> loopCode(Loop loop) {
+        ArrayList<ArrayList<IRInstruction>> lists = new ArrayList<>();
+        for(BasicBlock block: loop.body) {
+            if(block != loop.header && preheaders.containsKey(block)) {
+                lists.add(preheaders.get(block));
+            }
+            lists.add(block.instructions);
+        }
+        return lists;
+    }
+
+    // Checking whether an operand has the same value on every iteration of a loop
+    boolean isInvariant(Loop loop, String operand) {
+        if(loop.calls && IRInstruction.isGlobal(operand)) {
+            return false;
+        }
+        return IRInstruction.isConstant(operand) || !loop.definitions.containsKey(operand);
+    }
+
+    /*  Moving invariant computations into the preheader.
+     *  Only temporaries with a single definition are moved, so the value is
+     *  the same wherever it is used. The instructions have no side effects,
+     *  so running them when the loop body would not have is harmless, except
+     *  for a division that might divide by zero.
+     */
+    void hoistInvariants(Loop loop) {
+        ArrayList<IRInstruction> preheader = preheaders.computeIfAbsent(loop.header, block -> new ArrayList<>());
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(ArrayList<IRInstruction> list: loopCode(loop)) {
+                Iterator<IRInstruction> iterator = list.iterator();
+                while(iterator.hasNext()) {
+                    IRInstruction instruction = iterator.next();
+                    if(!canHoist(loop, instruction)) {
+                        continue;
+                    }
+                    iterator.remove();
+                    preheader.add(instruction);
+                    loop.definitions.remove(instruction.dest());
+                    loop.moved++;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // Checking whether an instruction can be moved out of a loop
+    boolean canHoist(Loop loop, IRInstruction instruction) {
+        if(!instruction.writesLastOperand() || instruction.getOpcode().equals("PHI")) {
+            return false;
+        }
+        String dest = instruction.dest();
+        if(!IRInstruction.isTemp(dest) || definitions.get(dest) != 1) {
+            return false;
+        }
+        if(instruction.getOpcode().startsWith("DIV")) {
+            String divisor = instruction.getOperand(1);
+            if(!IRInstruction.isConstant(divisor) || Double.parseDouble(divisor) == 0) {
+                return false;
+            }
+        }
+        for(String use: instruction.uses()) {
+            if(!isInvariant(loop, use)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Method to replace multiplications by induction variables with additions
+    void reduceStrength(Loop loop) {
+        HashMap<String, InductionVariable> inductionVariables = findInductionVariables(loop);
+        if(inductionVariables.isEmpty()) {
+            return;
+        }
+        ArrayList<IRInstruction> preheader = preheaders.get(loop.header);
+        HashMap<String, String> reducedTemps = new HashMap<>();
+        for(ArrayList<IRInstruction> list: loopCode(loop)) {
+            for(int i = 0; i < list.size(); i++) {
+                IRInstruction instruction = list.get(i);
+                if(!instruction.getOpcode().equals("MULTI")) {
+                    continue;
+                }
+                String left = instruction.getOperand(0);
+                String right = instruction.getOperand(1);
+                InductionVariable inductionVariable = inductionVariables.get(left);
+                String factor = right;
+                if(inductionVariable == null || !isInvariant(loop, factor)) {
+                    inductionVariable = inductionVariables.get(right);
+                    factor = left;
+                }
+                if(inductionVariable == null || !isInvariant(loop, factor)) {
+                    continue;
+                }
+
+                // The same product is only kept once per loop
+                list.remove(i);
+                IRInstruction next = i < list.size() ? list.get(i) : null;
+                String key = inductionVariable.variable + " " + factor;
+                String reduced = reducedTemps.get(key);
+                if(reduced == null) {
+                    reduced = generateTemp();
+                    reducedTemps.put(key, reduced);
+                    addInstruction(preheader, preheader.size(), new IRInstruction("MULTI", left, right, reduced));
+                    addStepUpdate(inductionVariable, factor, reduced, preheader);
+                    // The update may have been inserted before this position
+                    i = next != null ? indexOf(list, next) : list.size();
+                }
+
+                String product = instruction.dest();
+                if(!renameUses(list, i, product, reduced, inductionVariable)) {
+                    addInstruction(list, i, new IRInstruction("STOREI", reduced, product));
+                }
+                else {
+                    i--;
+                }
+                loop.reduced++;
+            }
+        }
+        countDefinitions(loop);
+    }
+
+    // Method to find the basic induction variables of a loop
+    HashMap<String, InductionVariable> findInductionVariables(Loop loop) {
+        HashMap<String, IRInstruction> producers = new HashMap<>();
+        HashMap<String, InductionVariable> inductionVariables = new HashMap<>();
+        for(ArrayList<IRInstruction> list: loopCode(loop)) {
+            for(IRInstruction instruction: list) {
+                if(instruction.dest() != null && IRInstruction.isTemp(instruction.dest())) {
+                    producers.put(instruction.dest(), instruction);
+                }
+                if(!instruction.getOpcode().equals("STOREI") || IRInstruction.isTemp(instruction.dest())) {
+                    continue;
+                }
+                String variable = instruction.dest();
+                IRInstruction update = producers.get(instruction.getOperand(0));
+                if(loop.definitions.get(variable) != 1 || update == null || useCounts.get(update.dest()) != 1
+                        || (loop.calls && IRInstruction.isGlobal(variable))) {
+                    continue;
+                }
+                String step = stepOf(update, variable);
+                if(step == null || !isInvariant(loop, step)) {
+                    continue;
+                }
+                InductionVariable inductionVariable = new InductionVariable();
+                inductionVariable.variable = variable;
+                inductionVariable.update = update;
+                inductionVariable.store = instruction;
+                inductionVariable.list = list;
+                inductionVariables.put(variable, inductionVariable);
+            }
+        }
+        return inductionVariables;
+    }
+
+    // Step of an update i + c, c + i or i - c of a variable, or null for anything else
+    static String stepOf(IRInstruction update, String variable) {
+        String opcode = update.getOpcode();
+        if(opcode.equals("ADDI") && update.getOperand(0).equals(variable)) {
+            return update.getOperand(1);
+        }
+        if(opcode.equals("ADDI") && update.getOperand(1).equals(variable)) {
+            return update.getOperand(0);
+        }
+        if(opcode.equals("SUBI") && update.getOperand(0).equals(variable)) {
+            return update.getOperand(1);
+        }
+        return null;
+    }
+
+    // Method to add c * k to a reduced temporary right after its induction variable is updated
+    void addStepUpdate(InductionVariable inductionVariable, String factor, String reduced, ArrayList<IRInstruction> preheader) {
+        String step = stepOf(inductionVariable.update, inductionVariable.variable);
+        String increment;
+        if(IRInstruction.isConstant(step) && IRInstruction.isConstant(factor)) {
+            // Folded with int arithmetic so the temporary wraps around like i * k does
+            increment = Integer.toString(Integer.parseInt(step) * Integer.parseInt(factor));
+        }
+        else if(step.equals("1")) {
+            increment = factor;
+        }
+        else {
+            increment = generateTemp();
+            addInstruction(preheader, preheader.size(), new IRInstruction("MULTI", step, factor, increment));
+        }
+        String opcode = inductionVariable.update.getOpcode().equals("SUBI") ? "SUBI" : "ADDI";
+        ArrayList<IRInstruction> list = inductionVariable.list;
+        int index = indexOf(list, inductionVariable.store) + 1;
+        addInstruction(list, index, new IRInstruction(opcode, reduced, increment, reduced));
+    }
+
+    /*  Replacing the uses of a product by the reduced temporary. This is only
+     *  done when every use follows in the same list before the induction
+     *  variable changes, otherwise the caller keeps a copy of the value.
+     */
+    boolean renameUses(ArrayList<IRInstruction> list, int start, String product, String reduced,
+                       InductionVariable inductionVariable) {
+        if(definitions.get(product) != 1) {
+            return false;
+        }
+        int found = 0;
+        int end = start;
+        for(; end < list.size() && found < useCounts.getOrDefault(product, 0); end++) {
+            IRInstruction instruction = list.get(end);
+            if(instruction == inductionVariable.store) {
+                return false;
+            }
+            found += Collections.frequency(instruction.uses(), product);
+        }
+        if(found < useCounts.getOrDefault(product, 0)) {
+            return false;
+        }
+        for(int i = start; i < end; i++) {
+            IRInstruction instruction = list.get(i);
+            for(int index: instruction.useIndexes()) {
+                if(instruction.operands[index].equals(product)) {
+                    instruction.operands[index] = reduced;
+                    useCounts.merge(reduced, 1, Integer::sum);
+                }
+            }
+        }
+        return true;
+    }
+
+    // Position of an instruction in a list by identity
+    static int indexOf(ArrayList<IRInstruction> list, IRInstruction instruction) {
+        for(int i = 0; i < list.size(); i++) {
+            if(list.get(i) == instruction) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Method to insert a new instruction and count its operands
+    void addInstruction(ArrayList<IRInstruction> list, int index, IRInstruction instruction) {
+        list.add(index, instruction);
+        record(instruction);
+    }
+
+    // Method to count the reads and the write of an instruction
+    void record(IRInstruction instruction) {
+        if(instruction.dest() != null) {
+            definitions.merge(instruction.dest(), 1, Integer::sum);
+        }
+        for(String use: instruction.uses()) {
+            useCounts.merge(use, 1, Integer::sum);
+        }
+    }
+
+    // Generates a temporary that is not used anywhere in the code yet
+    String generateTemp() {
+        tempNumber++;
+        return "$T" + tempNumber;
+    }
+}
@@ -0,0 +1,123 @@
+// Import libraries
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/*  Global class for a separately compiled program unit.
+ *  The interface lists the functions the unit defines, the functions of
+ *  other units it calls, and its global variables and strings. The code is
+ *  the register allocated Tiny code of its functions, plus the startup code
+ *  that calls main when the unit defines it. Compiling a program against a
+ *  library only needs the library's interface, so the library is compiled
+ *  once and linked into every program that uses it.
+ *  On disk the file is line based:
+ *      object
+ *      function name returnType parameterTypes...
+ *      extern name returnType parameterTypes...
+ *      var name type
+ *      str name "value"
+ *      startup
+ *      ...Tiny lines...
+ *      code
+ *      ...Tiny lines...
+ */
+class ObjectFile {
+    ArrayList<FunctionSymbol> exports = new ArrayList<>();
+    ArrayList<FunctionSymbol> externs = new ArrayList<>();
+    ArrayList<SymbolTableElement> globals = new ArrayList<>();
+    ArrayList<String> startup = new ArrayList<>();
+    ArrayList<String> code = new ArrayList<>();
+
+    // Object file getters
+    public ArrayList<FunctionSymbol> getExports() { return this.exports; }
+    public ArrayList<FunctionSymbol> getExterns() { return this.externs; }
+    public ArrayList<SymbolTableElement> getGlobals() { return this.globals; }
+
+    // Finding a function the unit defines
+    public FunctionSymbol export(String name) {
+        for(FunctionSymbol function: exports) {
+            if(function.getName().equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    // Tiny declaration of a global variable or string
+    public static String declaration(SymbolTableElement global) {
+        if(global.getType().equals("STRING")) {
+            return "str " + global.getName() + " " + global.getValue();
+        }
+        return "var " + global.getName();
+    }
+
+    // Writing the object file
+    public void write(String fileName) throws IOException {
+        try(PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
+            writer.println("object");
+            for(FunctionSymbol function: exports) {
+                writer.println(function.interfaceLine());
+            }
+            for(FunctionSymbol function: externs) {
+                writer.println("extern" + function.interfaceLine().substring("function".length()));
+            }
+            for(SymbolTableElement global: globals) {
+                writer.println(global.getType().equals("STRING") ? declaration(global)
+                        : "var " + global.getName() + " " + global.getType());
+            }
+            writer.println("startup");
+            for(String line: startup) {
+                writer.println(line);
+            }
+            writer.println("code");
+            for(String line: code) {
+                writer.println(line);
+            }
+        }
+    }
+
+    // Reading an object file
+    public static ObjectFile read(String fileName) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(fileName));
+        if(lines.isEmpty() || !lines.get(0).equals("object")) {
+            throw new IOException(fileName + " is not an object file");
+        }
+        ObjectFile object = new ObjectFile();
+        ArrayList<String> section = null;
+        for(String line: lines.subList(1, lines.size())) {
+            if(line.equals("startup")) {
+                section = object.startup;
+            }
+            else if(line.equals("code")) {
+                section = object.code;
+            }
+            else if(section != null) {
+                section.add(line);
+            }
+            else {
+                object.readInterfaceLine(line);
+            }
+        }
+        return object;
+    }
+
+    // Method to read one function, extern, var or str line of the interface
+    void readInterfaceLine(String line) {
+        String[] parts = line.split(" ");
+        switch(parts[0]) {
+            case "function":
+            case "extern":
+                FunctionSymbol function = new FunctionSymbol(parts[1], parts[2]);
+                function.parameterTypes.addAll(Arrays.asList(parts).subList(3, parts.length));
+                (parts[0].equals("function") ? exports : externs).add(function);
+                break;
+            case "var":
+                globals.add(new SymbolTableElement(parts[1], parts[2]));
+                break;
+            case "str":
+                globals.add(new SymbolTableElement(parts[1], "STRING", line.substring(line.indexOf('"'))));
+                break;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+// Import libraries
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/*  Global class for block execution counts collected by instrumented code.
+ *  An instrumented Tiny program prints "PROFILED <fingerprint>" and then
+ *  "PROFILE <block> <count>" for every basic block before it halts. The
+ *  fingerprint holds the block count, the options that change the IR and
+ *  a hash of the IR, so a profile of a different build can be recognized.
+ *  The output of a run (or several runs appended together) is the profile
+ *  file, and counts for the same block are added up. Anything else in the
+ *  file, such as the program's own output, is skipped.
+ */
+class ProfileData {
+    // Fingerprint of runs of builds that differ from each other
+    static final String MIXED = "several different builds";
+
+    HashMap<Integer, Long> counts = new HashMap<>();
+    String fingerprint = null;
+
+    // Reading a profile file
+    public static ProfileData read(String fileName) throws IOException {
+        ProfileData profile = new ProfileData();
+        String[] tokens = new String(Files.readAllBytes(Paths.get(fileName))).trim().split("\\s+");
+        for(int i = 0; i + 2 < tokens.length; i++) {
+            if(tokens[i].equals("PROFILED") && i + 3 < tokens.length) {
+                String recorded = tokens[i + 1] + " " + tokens[i + 2] + " " + tokens[i + 3];
+                boolean same = profile.fingerprint == null || profile.fingerprint.equals(recorded);
+                profile.fingerprint = same ? recorded : MIXED;
+                i += 3;
+            }
+            else if(tokens[i].equals("PROFILE") && tokens[i + 1].matches("\\d+") && tokens[i + 2].matches("\\d+")) {
+                profile.counts.merge(Integer.parseInt(tokens[i + 1]), Long.parseLong(tokens[i + 2]), Long::sum);
+                i += 2;
+            }
+        }
+        return profile;
+    }
+
+    // Profile getters
+    public HashMap<Integer, Long> getCounts() { return this.counts; }
+    public String getFingerprint() { return this.fingerprint; }
+
+    // Fingerprint of a compile, the blocks of its IR and whether the IR was optimized
+    public static String fingerprint(ControlFlowGraph graph, boolean optimize) {
+        StringBuilder ir = new StringBuilder();
+        for(BasicBlock block: graph.blocks) {
+            for(IRInstruction instruction: block.instructions) {
+                ir.append(instruction).append("\n");
+            }
+        }
+        return "blocks=" + graph.blocks.size() + " optimize=" + optimize + " ir=" + Integer.toHexString(ir.toString().hashCode());
+    }
+
+    public long count(BasicBlock block) {
+        return ControlFlowGraph.count(counts, block);
+    }
+
+    /*  Estimating the cycles a laid out program spends, given its Tiny code
+     *  per layout block. Every instruction costs a cycle plus one for each
+     *  memory operand, and taken jumps and calls cost two more cycles. The
+     *  profile only has block counts, so a branch is assumed taken as often
+     *  as its target block runs, capped by the count of the branching block.
+     */
+    public long estimateCycles(ControlFlowGraph graph, List<? extends List<String>> tinyBlocks) {
+        long cycles = 0;
+        for(int i = 0; i < graph.layout.size(); i++) {
+            long remaining = count(graph.layout.get(i));
+            for(String line: tinyBlocks.get(i)) {
+                String[] parts = line.split(" ");
+                if(parts[0].equals("jmp") || parts[0].equals("jsr")) {
+                    cycles += remaining * 3;
+                }
+                else if(parts[0].startsWith("j")) {
+                    BasicBlock target = graph.labels.get(parts[1]);
+                    long taken = target != null ? Math.min(remaining, count(target)) : 0;
+                    cycles += remaining + taken * 2;
+                    remaining -= taken;
+                }
+                else if(!parts[0].equals("label")) {
+                    cycles += remaining * instructionCost(parts);
+                }
+            }
+        }
+        return cycles;
+    }
+
+    // Cost of one non-jump Tiny instruction
+    static long instructionCost(String[] parts) {
+        long cost = 1;
+        for(int i = 1; i < parts.length; i++) {
+            if(!RegisterAllocator.isRegister(parts[i]) && !IRInstruction.isConstant(parts[i])
+                    && !parts[i].matches("read[ir]|write[irs]|halt")) {
+                cost++;
+            }
+        }
+        return cost;
+    }
+}
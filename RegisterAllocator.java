@@ -0,0 +1,210 @@
+// Import libraries
+import java.util.*;
+
+/*  Global class for mapping IR temporaries onto Tiny registers.
+ *  Without a register limit every $Tn simply becomes rn. With a limit the
+ *  temporaries get registers by linear scan over their live ranges, and the
+ *  last register is kept as a scratch register for spilled values. When the
+ *  registers run out the range with the lowest priority is spilled to memory,
+ *  where the priority is the number of times the temporary is referenced
+ *  weighted by how often each reference executes. The result of a move or
+ *  an operation takes the register of its left operand when that operand
+ *  dies there, because the Tiny code moves the left operand into the
+ *  result register before the right operand is read.
+ */
+class RegisterAllocator {
+    int registerCount;
+    HashMap<String, String> location = new HashMap<>();
+    LinkedHashMap<String, Interval> intervals = new LinkedHashMap<>();
+    ArrayList<String> spillSlots = new ArrayList<>();
+    String scratch;
+    int registersUsed = 0;
+
+    // Constructor, a register count of zero means no limit
+    public RegisterAllocator(int registerCount) {
+        this.registerCount = registerCount;
+    }
+
+    // Register allocator getters
+    public String getScratch() { return this.scratch; }
+    public int getRegistersUsed() { return this.registersUsed; }
+    public ArrayList<String> getSpillSlots() { return this.spillSlots; }
+
+    // Live range of one temporary over the instruction list
+    static class Interval {
+        String temp;
+        int start;
+        int end;
+        double weight = 0;
+        String register;
+
+        Interval(String temp, int start) {
+            this.temp = temp;
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    /*  Assigning a location to every temporary in the code.
+     *  weights holds how often each instruction executes; the list can be
+     *  empty, in which case every reference counts once.
+     */
+    public void allocate(List<IRInstruction> code, List<Long> weights) {
+        intervals = liveIntervals(code, weights);
+        if(registerCount <= 0) {
+            int highest = 0;
+            for(String temp: intervals.keySet()) {
+                int number = Integer.parseInt(temp.substring(2));
+                location.put(temp, "r" + number);
+                highest = Math.max(highest, number);
+            }
+            registersUsed = intervals.size();
+            scratch = "r" + (highest + 1);
+            return;
+        }
+
+        scratch = "r" + (registerCount - 1);
+        ArrayDeque<String> free = new ArrayDeque<>();
+        for(int i = 0; i < registerCount - 1; i++) {
+            free.add("r" + i);
+        }
+        HashSet<String> used = new HashSet<>();
+        ArrayList<Interval> sorted = new ArrayList<>(intervals.values());
+        sorted.sort(Comparator.comparingInt((Interval interval) -> interval.start));
+        ArrayList<Interval> active = new ArrayList<>();
+        for(Interval current: sorted) {
+            // Ranges that ended before this one starts give their registers back
+            Iterator<Interval> iterator = active.iterator();
+            while(iterator.hasNext()) {
+                Interval interval = iterator.next();
+                if(interval.end < current.start) {
+                    free.addFirst(interval.register);
+                    iterator.remove();
+                }
+            }
+            Interval dying = dyingLeftOperand(code.get(current.start), current, active);
+            if(dying != null) {
+                current.register = dying.register;
+                active.remove(dying);
+                active.add(current);
+                continue;
+            }
+            if(!free.isEmpty()) {
+                current.register = free.removeFirst();
+                active.add(current);
+                used.add(current.register);
+                continue;
+            }
+            // Out of registers, so the cheapest range to keep in memory is spilled
+            Interval victim = current;
+            for(Interval interval: active) {
+                if(interval.weight < victim.weight || (interval.weight == victim.weight && interval.end > victim.end)) {
+                    victim = interval;
+                }
+            }
+            if(victim != current) {
+                current.register = victim.register;
+                victim.register = null;
+                active.remove(victim);
+                active.add(current);
+            }
+        }
+        for(Interval interval: intervals.values()) {
+            if(interval.register != null) {
+                location.put(interval.temp, interval.register);
+            }
+            else {
+                String slot = "spill_" + spillSlots.size();
+                spillSlots.add(slot);
+                location.put(interval.temp, slot);
+            }
+        }
+        registersUsed = used.size();
+    }
+
+    // Method to find the range of a left operand whose last reference is the instruction that starts the current range
+    Interval dyingLeftOperand(IRInstruction instruction, Interval current, ArrayList<Interval> active) {
+        String opcode = instruction.getOpcode();
+        if(!current.temp.equals(instruction.dest())
+                || !(opcode.startsWith("STORE") || Driver.ASTBuilder.tinyArithmetic(opcode) != null)) {
+            return null;
+        }
+        for(Interval interval: active) {
+            if(interval.temp.equals(instruction.getOperand(0)) && interval.end == current.start) {
+                return interval;
+            }
+        }
+        return null;
+    }
+
+    // Method to find the first and last reference of every temporary
+    LinkedHashMap<String, Interval> liveIntervals(List<IRInstruction> code, List<Long> weights) {
+        LinkedHashMap<String, Interval> intervals = new LinkedHashMap<>();
+        HashMap<String, Integer> labelIndex = new HashMap<>();
+        for(int i = 0; i < code.size(); i++) {
+            IRInstruction instruction = code.get(i);
+            if(instruction.isLabel()) {
+                labelIndex.put(instruction.target(), i);
+            }
+            long weight = i < weights.size() ? weights.get(i) : 1;
+            for(String operand: instruction.operands) {
+                if(!IRInstruction.isTemp(operand)) {
+                    continue;
+                }
+                Interval interval = intervals.get(operand);
+                if(interval == null) {
+                    interval = new Interval(operand, i);
+                    intervals.put(operand, interval);
+                }
+                interval.end = i;
+                interval.weight += weight;
+            }
+        }
+
+        // A value live into a loop has to stay live until the jump back to the loop's top
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(int i = 0; i < code.size(); i++) {
+                IRInstruction instruction = code.get(i);
+                if(!instruction.isJump() && !instruction.isBranch()) {
+                    continue;
+                }
+                Integer top = labelIndex.get(instruction.target());
+                if(top == null || top > i) {
+                    continue;
+                }
+                for(Interval interval: intervals.values()) {
+                    if(interval.start < top && interval.end >= top && interval.end < i) {
+                        interval.end = i;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return intervals;
+    }
+
+    // Registers holding values that are needed after the instruction at the given index
+    public ArrayList<String> liveAcross(int index) {
+        TreeMap<Integer, String> live = new TreeMap<>();
+        for(Interval interval: intervals.values()) {
+            String register = location.get(interval.temp);
+            if(interval.start < index && interval.end > index && isRegister(register)) {
+                live.put(Integer.parseInt(register.substring(1)), register);
+            }
+        }
+        return new ArrayList<>(live.values());
+    }
+
+    // Location of an operand, temporaries are replaced by their register or spill slot
+    public String operand(String operand) {
+        String mapped = location.get(operand);
+        return mapped != null ? mapped : operand;
+    }
+
+    // Checking whether a Tiny operand is a register
+    public static boolean isRegister(String operand) {
+        return operand.matches("r\\d+");
+    }
+}
@@ -0,0 +1,559 @@
+// Import libraries
+import java.io.PrintStream;
+import java.util.*;
+
+/*  Global class for SSA based optimization of the IR code.
+ *  The IR is put into SSA form (dominator tree, phi placement and renaming
+ *  of user variables and $T temporaries to name#version), then sparse
+ *  conditional constant propagation finds every value and branch that is
+ *  constant on all executable paths. Constants are substituted, branches
+ *  with known outcomes become jumps, unreachable blocks are dropped and
+ *  temporaries that are no longer used are deleted.
+ *  The passes never copy one SSA name into another, so the versions of a
+ *  variable never overlap and leaving SSA form only needs the phis removed
+ *  and the version suffixes stripped.
+ *  In a function that calls other functions, global variables can change
+ *  at every call, so they are left out of SSA form and never constant.
+ *  Every step is linear in the size of the code apart from the iterative
+ *  dominator computation in ControlFlowGraph.
+ */
+class SSAOptimizer {
+    static final String BOTTOM = "BOTTOM";
+    static final String ENTRY_LABEL = "ssa_entry";
+
+    ControlFlowGraph graph;
+    ArrayList<BasicBlock> order;
+    BasicBlock[] idom;
+    ArrayList<ArrayList<BasicBlock>> dominatorChildren;
+    ArrayList<ArrayList<BasicBlock>> frontiers = new ArrayList<>();
+    ArrayList<ArrayList<IRInstruction>> phis = new ArrayList<>();
+
+    // Lattice values: missing means not yet known, BOTTOM means not constant
+    HashMap<String, String> values = new HashMap<>();
+    HashSet<String> opaque = new HashSet<>();
+    HashMap<String, ArrayList<IRInstruction>> users = new HashMap<>();
+    IdentityHashMap<IRInstruction, BasicBlock> blockOf = new IdentityHashMap<>();
+    boolean[][] executableEdges;
+    boolean[] visited;
+    ArrayDeque<BasicBlock[]> flowWorklist = new ArrayDeque<>();
+    ArrayDeque<String> ssaWorklist = new ArrayDeque<>();
+
+    // Statistics for the report
+    int instructionsBefore = 0;
+    int instructionsAfter = 0;
+    int constantValues = 0;
+    int blocksRemoved = 0;
+
+    // Constructor, the graph gets an empty entry block so no phi ever lands in the entry
+    public SSAOptimizer(List<IRInstruction> code) {
+        ArrayList<IRInstruction> copy = new ArrayList<>();
+        copy.add(new IRInstruction("LABEL", ENTRY_LABEL));
+        boolean calls = false;
+        for(IRInstruction instruction: code) {
+            copy.add(instruction.copy());
+            calls |= instruction.getOpcode().equals("JSR");
+        }
+        for(IRInstruction instruction: copy) {
+            ArrayList<String> names = new ArrayList<>(instruction.uses());
+            names.add(instruction.dest());
+            for(String name: names) {
+                if(calls && name != null && IRInstruction.isGlobal(name)) {
+                    opaque.add(name);
+                }
+            }
+        }
+        instructionsBefore = code.size();
+        graph = ControlFlowGraph.build(copy);
+    }
+
+    // Running the whole pipeline on a list of IR instructions, the counts go to the report stream
+    public static ArrayList<IRInstruction> optimize(List<IRInstruction> code, PrintStream report) {
+        SSAOptimizer optimizer = new SSAOptimizer(code);
+        ArrayList<IRInstruction> optimized = optimizer.run();
+        report.println("SSA constant propagation: " + optimizer.instructionsBefore + " IR instructions before, " +
+                optimizer.instructionsAfter + " after, " + optimizer.constantValues + " constant values, " +
+                optimizer.blocksRemoved + " unreachable blocks removed");
+        return optimized;
+    }
+
+    // Method to run the passes in order
+    public ArrayList<IRInstruction> run() {
+        graph.computeDominators();
+        order = graph.order;
+        idom = graph.idom;
+        dominatorChildren = graph.dominatorChildren;
+        computeFrontiers();
+        placePhis();
+        rename();
+        propagateConstants();
+        ArrayList<IRInstruction> code = destroy();
+        removeDeadTemps(code);
+        instructionsAfter = code.size();
+        return code;
+    }
+
+    // Method to compute dominance frontiers from the join points
+    void computeFrontiers() {
+        for(int i = 0; i < graph.blocks.size(); i++) {
+            frontiers.add(new ArrayList<>());
+        }
+        for(BasicBlock block: order) {
+            if(block.predecessors.size() < 2) {
+                continue;
+            }
+            for(BasicBlock predecessor: block.predecessors) {
+                if(graph.orderIndex[predecessor.id] < 0) {
+                    continue;
+                }
+                BasicBlock runner = predecessor;
+                while(runner != idom[block.id]) {
+                    ArrayList<BasicBlock> frontier = frontiers.get(runner.id);
+                    if(frontier.isEmpty() || frontier.get(frontier.size() - 1) != block) {
+                        frontier.add(block);
+                    }
+                    runner = idom[runner.id];
+                }
+            }
+        }
+    }
+
+    /*  Placing phis for the names that are live across blocks.
+     *  Only names used in some block before being written there can need a
+     *  phi (semi-pruned SSA), which keeps the phi count down on large code.
+     */
+    void placePhis() {
+        HashSet<String> globalNames = new HashSet<>();
+        HashMap<String, ArrayList<BasicBlock>> definingBlocks = new HashMap<>();
+        for(BasicBlock block: order) {
+            HashSet<String> written = new HashSet<>();
+            for(IRInstruction instruction: block.instructions) {
+                for(String use: instruction.uses()) {
+                    if(!IRInstruction.isConstant(use) && !opaque.contains(use) && !written.contains(use)) {
+                        globalNames.add(use);
+                    }
+                }
+                String dest = instruction.dest();
+                if(dest != null && !opaque.contains(dest) && written.add(dest)) {
+                    definingBlocks.computeIfAbsent(dest, name -> new ArrayList<>()).add(block);
+                }
+            }
+        }
+        for(int i = 0; i < graph.blocks.size(); i++) {
+            phis.add(new ArrayList<>());
+        }
+        int[] hasPhi = new int[graph.blocks.size()];
+        int[] onWorklist = new int[graph.blocks.size()];
+        int stamp = 0;
+        for(String name: globalNames) {
+            ArrayList<BasicBlock> defining = definingBlocks.get(name);
+            if(defining == null) {
+                continue;
+            }
+            stamp++;
+            ArrayDeque<BasicBlock> worklist = new ArrayDeque<>();
+            for(BasicBlock block: defining) {
+                onWorklist[block.id] = stamp;
+                worklist.add(block);
+            }
+            while(!worklist.isEmpty()) {
+                BasicBlock block = worklist.poll();
+                for(BasicBlock frontier: frontiers.get(block.id)) {
+                    if(hasPhi[frontier.id] == stamp) {
+                        continue;
+                    }
+                    hasPhi[frontier.id] = stamp;
+                    String[] operands = new String[frontier.predecessors.size() + 1];
+                    Arrays.fill(operands, name);
+                    phis.get(frontier.id).add(new IRInstruction("PHI", operands));
+                    if(onWorklist[frontier.id] != stamp) {
+                        onWorklist[frontier.id] = stamp;
+                        worklist.add(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    // Method to rename every name to name#version with a walk over the dominator tree
+    void rename() {
+        HashMap<String, Integer> versions = new HashMap<>();
+        HashMap<String, ArrayDeque<String>> stacks = new HashMap<>();
+        Stack<BasicBlock> walk = new Stack<>();
+        Stack<ArrayList<String>> pushed = new Stack<>();
+        Stack<Boolean> leaving = new Stack<>();
+        walk.push(graph.entry());
+        leaving.push(false);
+        while(!walk.isEmpty()) {
+            BasicBlock block = walk.pop();
+            if(leaving.pop()) {
+                for(String name: pushed.pop()) {
+                    stacks.get(name).pop();
+                }
+                continue;
+            }
+            ArrayList<String> names = new ArrayList<>();
+            for(IRInstruction phi: phis.get(block.id)) {
+                define(phi, versions, stacks, names);
+            }
+            for(IRInstruction instruction: block.instructions) {
+                for(int index: instruction.useIndexes()) {
+                    String operand = instruction.operands[index];
+                    if(!IRInstruction.isConstant(operand) && !opaque.contains(operand)) {
+                        instruction.operands[index] = current(operand, stacks);
+                    }
+                }
+                define(instruction, versions, stacks, names);
+            }
+            for(BasicBlock successor: block.successors) {
+                int index = successor.predecessors.indexOf(block);
+                for(IRInstruction phi: phis.get(successor.id)) {
+                    phi.operands[index] = current(base(phi.dest()), stacks);
+                }
+            }
+            walk.push(block);
+            leaving.push(true);
+            pushed.push(names);
+            for(BasicBlock child: dominatorChildren.get(block.id)) {
+                walk.push(child);
+                leaving.push(false);
+            }
+        }
+    }
+
+    // Giving the name written by an instruction a new version
+    void define(IRInstruction instruction, HashMap<String, Integer> versions,
+                HashMap<String, ArrayDeque<String>> stacks, ArrayList<String> names) {
+        int index = instruction.destIndex();
+        if(index < 0 || opaque.contains(instruction.operands[index])) {
+            return;
+        }
+        String name = instruction.operands[index];
+        int version = versions.merge(name, 1, Integer::sum);
+        String renamed = name + "#" + version;
+        stacks.computeIfAbsent(name, key -> new ArrayDeque<>()).push(renamed);
+        names.add(name);
+        instruction.operands[index] = renamed;
+    }
+
+    // Current version of a name; version 0 is the value the name had on entry
+    String current(String name, HashMap<String, ArrayDeque<String>> stacks) {
+        ArrayDeque<String> stack = stacks.get(name);
+        if(stack == null || stack.isEmpty()) {
+            String entry = name + "#0";
+            values.put(entry, BOTTOM);
+            return entry;
+        }
+        return stack.peek();
+    }
+
+    // Sparse conditional constant propagation (Wegman and Zadeck)
+    void propagateConstants() {
+        int count = graph.blocks.size();
+        executableEdges = new boolean[count][];
+        visited = new boolean[count];
+        for(BasicBlock block: graph.blocks) {
+            executableEdges[block.id] = new boolean[block.predecessors.size()];
+            for(IRInstruction instruction: phis.get(block.id)) {
+                addUsers(instruction, block);
+            }
+            for(IRInstruction instruction: block.instructions) {
+                addUsers(instruction, block);
+            }
+        }
+
+        flowWorklist.add(new BasicBlock[] {null, graph.entry()});
+        while(!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+            while(!flowWorklist.isEmpty()) {
+                BasicBlock[] edge = flowWorklist.poll();
+                BasicBlock block = edge[1];
+                if(edge[0] != null) {
+                    int index = block.predecessors.indexOf(edge[0]);
+                    if(executableEdges[block.id][index]) {
+                        continue;
+                    }
+                    executableEdges[block.id][index] = true;
+                }
+                for(IRInstruction phi: phis.get(block.id)) {
+                    evaluate(phi, block);
+                }
+                if(!visited[block.id]) {
+                    visited[block.id] = true;
+                    for(IRInstruction instruction: block.instructions) {
+                        evaluate(instruction, block);
+                    }
+                    if(block.terminator() == null && block.fallThrough != null) {
+                        markEdge(block, block.fallThrough);
+                    }
+                }
+            }
+            while(!ssaWorklist.isEmpty()) {
+                String name = ssaWorklist.poll();
+                for(IRInstruction instruction: users.getOrDefault(name, new ArrayList<>())) {
+                    BasicBlock block = blockOf.get(instruction);
+                    if(visited[block.id]) {
+                        evaluate(instruction, block);
+                    }
+                }
+            }
+        }
+    }
+
+    // Method to record which instructions read each name
+    void addUsers(IRInstruction instruction, BasicBlock block) {
+        blockOf.put(instruction, block);
+        for(String use: instruction.uses()) {
+            users.computeIfAbsent(use, name -> new ArrayList<>()).add(instruction);
+        }
+    }
+
+    // Method to add a control flow edge to the worklist
+    void markEdge(BasicBlock from, BasicBlock to) {
+        if(to != null) {
+            flowWorklist.add(new BasicBlock[] {from, to});
+        }
+    }
+
+    // Method to evaluate one instruction over the lattice
+    void evaluate(IRInstruction instruction, BasicBlock block) {
+        String opcode = instruction.getOpcode();
+        if(opcode.equals("PHI")) {
+            String result = null;
+            for(int i = 0; i < block.predecessors.size(); i++) {
+                if(executableEdges[block.id][i]) {
+                    result = meet(result, valueOf(instruction.operands[i]));
+                }
+            }
+            update(instruction.dest(), result);
+        }
+        else if(opcode.startsWith("STORE")) {
+            update(instruction.dest(), valueOf(instruction.operands[0]));
+        }
+        else if(opcode.startsWith("READ") || (opcode.equals("POP") && instruction.dest() != null)) {
+            update(instruction.dest(), BOTTOM);
+        }
+        else if(instruction.dest() != null) {
+            update(instruction.dest(), fold(opcode, valueOf(instruction.operands[0]), valueOf(instruction.operands[1])));
+        }
+        else if(instruction.isJump()) {
+            markEdge(block, graph.labels.get(instruction.target()));
+        }
+        else if(instruction.isBranch()) {
+            String left = valueOf(instruction.operands[0]);
+            String right = valueOf(instruction.operands[1]);
+            if(left == null || right == null) {
+                return;
+            }
+            if(left.equals(BOTTOM) || right.equals(BOTTOM)) {
+                markEdge(block, graph.labels.get(instruction.target()));
+                markEdge(block, block.fallThrough);
+            }
+            else if(compare(opcode, left, right)) {
+                markEdge(block, graph.labels.get(instruction.target()));
+            }
+            else {
+                markEdge(block, block.fallThrough);
+            }
+        }
+    }
+
+    // Lattice value of an operand, literals are their own value
+    String valueOf(String operand) {
+        if(IRInstruction.isConstant(operand)) {
+            return operand;
+        }
+        if(opaque.contains(operand)) {
+            return BOTTOM;
+        }
+        return values.get(operand);
+    }
+
+    // Meeting two lattice values
+    static String meet(String first, String second) {
+        if(first == null) {
+            return second;
+        }
+        if(second == null || first.equals(second)) {
+            return first;
+        }
+        return BOTTOM;
+    }
+
+    // Method to lower the value of a name and queue its users when it changes
+    void update(String name, String value) {
+        String old = values.get(name);
+        String lowered = meet(old, value);
+        if(lowered != null && !lowered.equals(old)) {
+            values.put(name, lowered);
+            ssaWorklist.add(name);
+        }
+    }
+
+    // Folding an arithmetic instruction with constant operands
+    static String fold(String opcode, String left, String right) {
+        if(left == null || right == null) {
+            return null;
+        }
+        if(left.equals(BOTTOM) || right.equals(BOTTOM)) {
+            return BOTTOM;
+        }
+        try {
+            if(opcode.endsWith("I")) {
+                int a = Integer.parseInt(left);
+                int b = Integer.parseInt(right);
+                switch(opcode) {
+                    case "ADDI": return Integer.toString(a + b);
+                    case "SUBI": return Integer.toString(a - b);
+                    case "MULTI": return Integer.toString(a * b);
+                    case "DIVI": return b == 0 ? BOTTOM : Integer.toString(a / b);
+                }
+            }
+            else {
+                double a = Double.parseDouble(left);
+                double b = Double.parseDouble(right);
+                double result;
+                switch(opcode) {
+                    case "ADDF": result = a + b; break;
+                    case "SUBF": result = a - b; break;
+                    case "MULTF": result = a * b; break;
+                    case "DIVF": result = a / b; break;
+                    default: return BOTTOM;
+                }
+                // Only results Tiny can read back as a plain decimal literal are folded
+                String literal = Double.toString(result);
+                return IRInstruction.isConstant(literal) ? literal : BOTTOM;
+            }
+        }
+        catch(NumberFormatException e) {
+            return BOTTOM;
+        }
+        return BOTTOM;
+    }
+
+    // Evaluating a branch condition on two constants
+    static boolean compare(String opcode, String left, String right) {
+        int order = opcode.endsWith("F") ? Double.compare(Double.parseDouble(left), Double.parseDouble(right))
+                : Integer.compare(Integer.parseInt(left), Integer.parseInt(right));
+        switch(opcode.substring(0, 2)) {
+            case "GT": return order > 0;
+            case "GE": return order >= 0;
+            case "LT": return order < 0;
+            case "LE": return order <= 0;
+            case "EQ": return order == 0;
+            default: return order != 0;
+        }
+    }
+
+    // Constant value of a name, or null if it is not constant
+    String constant(String operand) {
+        String value = valueOf(operand);
+        return value == null || value.equals(BOTTOM) ? null : value;
+    }
+
+    /*  Rewriting the code with the constants found and leaving SSA form.
+     *  Blocks stay in their original order, so every remaining fall-through
+     *  still reaches the same block.
+     */
+    ArrayList<IRInstruction> destroy() {
+        ArrayList<IRInstruction> code = new ArrayList<>();
+        for(BasicBlock block: graph.blocks) {
+            if(!visited[block.id]) {
+                blocksRemoved++;
+                continue;
+            }
+            for(IRInstruction instruction: block.instructions) {
+                if(instruction.isLabel() && instruction.target().equals(ENTRY_LABEL)) {
+                    continue;
+                }
+                IRInstruction rewritten = rewrite(instruction);
+                if(rewritten != null) {
+                    code.add(rewritten);
+                }
+            }
+        }
+        return code;
+    }
+
+    // Method to rewrite one instruction, returns null when it can be dropped
+    IRInstruction rewrite(IRInstruction instruction) {
+        String opcode = instruction.getOpcode();
+        String[] operands = instruction.operands.clone();
+        // Tiny reads and writes need a variable, so those operands keep their names
+        if(!opcode.startsWith("WRITE") && !opcode.startsWith("READ")) {
+            for(int index: instruction.useIndexes()) {
+                String value = constant(operands[index]);
+                if(value != null && !IRInstruction.isConstant(operands[index])) {
+                    operands[index] = value;
+                }
+            }
+        }
+        String dest = instruction.dest();
+        if(dest != null && !opcode.startsWith("READ")) {
+            String value = constant(dest);
+            if(value != null) {
+                constantValues++;
+                if(IRInstruction.isTemp(dest)) {
+                    return null;
+                }
+                return new IRInstruction("STORE" + opcode.charAt(opcode.length() - 1), value, base(dest));
+            }
+        }
+        if(instruction.isBranch() && IRInstruction.isConstant(operands[0]) && IRInstruction.isConstant(operands[1])) {
+            return compare(opcode, operands[0], operands[1]) ? new IRInstruction("JUMP", instruction.target()) : null;
+        }
+        for(int i = 0; i < operands.length; i++) {
+            operands[i] = base(operands[i]);
+        }
+        return new IRInstruction(opcode, operands);
+    }
+
+    // Name without its SSA version
+    static String base(String name) {
+        int index = name.indexOf('#');
+        return index >= 0 ? name.substring(0, index) : name;
+    }
+
+    // Method to delete instructions that only write temporaries nobody reads
+    static void removeDeadTemps(ArrayList<IRInstruction> code) {
+        HashMap<String, Integer> useCounts = new HashMap<>();
+        HashMap<String, ArrayList<Integer>> definitions = new HashMap<>();
+        for(int i = 0; i < code.size(); i++) {
+            IRInstruction instruction = code.get(i);
+            for(String use: instruction.uses()) {
+                useCounts.merge(use, 1, Integer::sum);
+            }
+            String dest = instruction.dest();
+            // A POP also moves the stack pointer, so it stays even when its value is not needed
+            if(dest != null && IRInstruction.isTemp(dest) && instruction.writesLastOperand()) {
+                definitions.computeIfAbsent(dest, name -> new ArrayList<>()).add(i);
+            }
+        }
+        boolean[] removed = new boolean[code.size()];
+        ArrayDeque<String> worklist = new ArrayDeque<>();
+        for(String temp: definitions.keySet()) {
+            if(!useCounts.containsKey(temp)) {
+                worklist.add(temp);
+            }
+        }
+        while(!worklist.isEmpty()) {
+            String temp = worklist.poll();
+            for(int index: definitions.get(temp)) {
+                if(removed[index]) {
+                    continue;
+                }
+                removed[index] = true;
+                for(String use: code.get(index).uses()) {
+                    if(useCounts.merge(use, -1, Integer::sum) == 0 && definitions.containsKey(use)) {
+                        worklist.add(use);
+                    }
+                }
+            }
+        }
+        int kept = 0;
+        for(int i = 0; i < code.size(); i++) {
+            if(!removed[i]) {
+                code.set(kept++, code.get(i));
+            }
+        }
+        code.subList(kept, code.size()).clear();
+    }
+}
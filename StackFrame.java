@@ -0,0 +1,65 @@
+// Import libraries
+import java.util.*;
+
+/*  Global class for the stack frame of one function in the Tiny code.
+ *  The caller pushes an empty slot for the return value and then the
+ *  arguments, and jsr pushes the return address. link saves the frame
+ *  pointer and reserves room for the locals, so relative to the frame
+ *  pointer a function with n parameters sees
+ *      $-1, $-2, ...   local variables, then spilled temporaries
+ *      $0              saved frame pointer
+ *      $1              return address
+ *      $2 .. $(n+1)    parameters, the last one first
+ *      $(n+2)          return value
+ *  Registers are saved by the caller around each call, and only the ones
+ *  that hold values still needed after the call.
+ */
+class StackFrame {
+    String name;
+    int parameterCount;
+    int localCount = 0;
+    HashMap<String, Integer> spillSlots = new HashMap<>();
+
+    // Constructor
+    public StackFrame(String name, int parameterCount) {
+        this.name = name;
+        this.parameterCount = parameterCount;
+    }
+
+    // Stack frame getters
+    public String getName() { return this.name; }
+
+    // Size reserved by link, locals and spill slots
+    public int size() {
+        return localCount + spillSlots.size();
+    }
+
+    // Method to make room for an IR operand of this function before the code is generated
+    public void reserve(String operand, RegisterAllocator registers) {
+        if(operand.startsWith("$L")) {
+            localCount = Math.max(localCount, Integer.parseInt(operand.substring(2)));
+        }
+        else if(IRInstruction.isTemp(operand) && !RegisterAllocator.isRegister(registers.operand(operand))) {
+            spillSlots.putIfAbsent(registers.operand(operand), spillSlots.size());
+        }
+    }
+
+    // Tiny operand for an IR operand of this function
+    public String operand(String operand, RegisterAllocator registers) {
+        if(operand.startsWith("$L")) {
+            return "$-" + operand.substring(2);
+        }
+        if(operand.startsWith("$P")) {
+            return "$" + (parameterCount + 2 - Integer.parseInt(operand.substring(2)));
+        }
+        if(operand.equals("$R")) {
+            return "$" + (parameterCount + 2);
+        }
+        String location = registers.operand(operand);
+        Integer index = spillSlots.get(location);
+        if(index != null) {
+            return "$-" + (localCount + index + 1);
+        }
+        return location;
+    }
+}
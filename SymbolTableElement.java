@@ -0,0 +1,34 @@
+// Global class for symbol table elements
+class SymbolTableElement {
+    String name = null;
+    String type = null;
+    String value = null;
+
+    // Base constructor
+    public SymbolTableElement() {}
+
+    // Symbol table constructors
+    public SymbolTableElement(String name, String type) {
+        this.name = name;
+        this.type = type;
+    }
+    public SymbolTableElement(String name, String type, String value) {
+        this.name = name;
+        this.type = type;
+        this.value = value;
+    }
+    // Symbol table element getters
+    public String getName() { return this.name; }
+    public String getType() { return this.type; }
+    public String getValue() { return this.value; }
+
+    // toString method
+    @Override public String toString() {
+        if (this.value != null) {
+            return ("name " + this.name + " type " + this.type + "value " + this.value + "\n");
+        }
+        else {
+            return ("name " + this.name + " type " + this.type + "\n");
+        }
+    }
+}
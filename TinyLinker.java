@@ -0,0 +1,100 @@
+// Import libraries
+import java.util.*;
+
+/*  Global class for linking object files into one Tiny program.
+ *  Every function has to be defined by exactly one unit, and every unit has
+ *  to have been compiled against the same interface of the functions it
+ *  calls. Globals with the same name are one variable in the linked
+ *  program, so their declarations are merged and have to agree. Labels of
+ *  a unit that are not function names are local to the unit. The compiler
+ *  generates them with an underscore, which Little identifiers never have,
+ *  so they cannot clash with a function name. They get the suffix
+ *  "_o<unit>" in every unit but the first, so they cannot clash with the
+ *  labels of another unit either.
+ *  The output is the merged declarations, the startup code of the unit
+ *  that defines main, and the code of all units in order.
+ */
+class TinyLinker {
+    List<ObjectFile> objects;
+    LinkedHashMap<String, FunctionSymbol> functions = new LinkedHashMap<>();
+    LinkedHashMap<String, SymbolTableElement> globals = new LinkedHashMap<>();
+
+    // Constructor
+    public TinyLinker(List<ObjectFile> objects) {
+        this.objects = objects;
+    }
+
+    // Linking object files, the first one is the program being compiled
+    public static ArrayList<String> link(List<ObjectFile> objects) {
+        return new TinyLinker(objects).run();
+    }
+
+    // Method to resolve the functions and globals and put the code together
+    public ArrayList<String> run() {
+        for(ObjectFile object: objects) {
+            for(FunctionSymbol function: object.getExports()) {
+                if(functions.put(function.getName(), function) != null) {
+                    linkError("DUPLICATE FUNCTION", function.getName());
+                }
+            }
+        }
+        for(ObjectFile object: objects) {
+            for(FunctionSymbol function: object.getExterns()) {
+                FunctionSymbol definition = functions.get(function.getName());
+                if(definition == null) {
+                    linkError("UNDEFINED FUNCTION", function.getName());
+                }
+                if(!definition.sameSignature(function)) {
+                    linkError("SIGNATURE MISMATCH", function.getName());
+                }
+            }
+            for(SymbolTableElement global: object.getGlobals()) {
+                SymbolTableElement merged = globals.putIfAbsent(global.getName(), global);
+                if(merged != null && (!merged.getType().equals(global.getType())
+                        || !Objects.equals(merged.getValue(), global.getValue()))) {
+                    linkError("CONFLICTING DECLARATION", global.getName());
+                }
+            }
+        }
+
+        ArrayList<String> tiny = new ArrayList<>();
+        for(SymbolTableElement global: globals.values()) {
+            tiny.add(ObjectFile.declaration(global));
+        }
+        for(int i = 0; i < objects.size(); i++) {
+            if(objects.get(i).export("main") != null) {
+                tiny.addAll(relocate(objects.get(i).startup, i));
+            }
+        }
+        for(int i = 0; i < objects.size(); i++) {
+            tiny.addAll(relocate(objects.get(i).code, i));
+        }
+        return tiny;
+    }
+
+    // Method to rename the local labels of one unit
+    ArrayList<String> relocate(List<String> code, int unit) {
+        ArrayList<String> relocated = new ArrayList<>();
+        for(String line: code) {
+            String[] parts = line.split(" ");
+            if(unit > 0 && parts.length == 2 && isLabelOperation(parts[0]) && !functions.containsKey(parts[1])) {
+                line = parts[0] + " " + parts[1] + "_o" + unit;
+            }
+            else if(parts[0].equals("jsr") && !functions.containsKey(parts[1])) {
+                linkError("UNDEFINED FUNCTION", parts[1]);
+            }
+            relocated.add(line);
+        }
+        return relocated;
+    }
+
+    // Checking whether a Tiny opcode takes a label operand
+    static boolean isLabelOperation(String opcode) {
+        return opcode.equals("label") || opcode.equals("jmp") || opcode.matches("j(gt|lt|ge|le|eq|ne)");
+    }
+
+    // Method to report an error that stops the link
+    static void linkError(String error, String name) {
+        throw new CompileError("LINK ERROR " + error + " " + name);
+    }
+}
@@ -0,0 +1,42 @@
+#!/bin/sh
+# Regression programs: every tests/NAME.little is compiled in each mode below,
+# its Tiny code is run on tests/NAME.input and the output is compared with
+# tests/NAME.expected. Run from the directory with the compiled classes.
+#   CP    class path of the compiler, default .:antlr-4.7.2-complete.jar
+#   TINY  Tiny simulator, default tiny
+CP=${CP:-.:antlr-4.7.2-complete.jar}
+TINY=${TINY:-tiny}
+dir=$(dirname "$0")
+tmp=${TMPDIR:-/tmp}/little-tests.$$
+mkdir -p "$tmp"
+failed=0
+
+# Method to report one mode of one program
+check() {
+    if cmp -s "$1" "$2"; then
+        echo "ok   $3"
+    else
+        echo "FAIL $3: expected '$(cat "$1")', got '$(cat "$2")'"
+        failed=1
+    fi
+}
+
+for program in "$dir"/*.little; do
+    name=$(basename "$program" .little)
+    expected="$dir/$name.expected"
+    input="$dir/$name.input"
+
+    # The direct path prints the program output and nothing else
+    java -cp "$CP" Driver --run --input "$input" < "$program" > "$tmp/out" 2>&1
+    check "$expected" "$tmp/out" "$name --run"
+
+    for mode in "" "--optimize" "--registers 4" "--optimize --registers 4" "--optimize --registers 3"; do
+        java -cp "$CP" Driver $mode < "$program" > "$tmp/listing" 2>&1
+        sed -n '/^;tiny code/,$p' "$tmp/listing" | tail -n +2 > "$tmp/program.tiny"
+        $TINY "$tmp/program.tiny" < "$input" > "$tmp/out" 2>/dev/null
+        check "$expected" "$tmp/out" "$name ${mode:-(default)}"
+    done
+done
+
+rm -rf "$tmp"
+exit $failed